@@ -0,0 +1,42 @@
+package lu.crx.financing.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the storage of unfinanced invoices during the financing run.
+ *
+ * @param storage    where the backlog of unfinanced invoices is held
+ * @param scratchDir directory of the scratch files of the {@link Storage#MAPPED} backlog, system temp dir by default
+ * @param fetchSize  JDBC fetch size used for streaming the backlog from the database
+ * @param chunkSize  number of financing results saved and committed together
+ */
+@ConfigurationProperties(prefix = "financing.backlog")
+public record BacklogProperties(@DefaultValue("HEAP") Storage storage,
+                                Path scratchDir,
+                                @DefaultValue("10000") int fetchSize,
+                                @DefaultValue("1000") int chunkSize) {
+
+    public BacklogProperties {
+        if (scratchDir == null) {
+            scratchDir = Path.of(System.getProperty("java.io.tmpdir"));
+        }
+    }
+
+    public enum Storage {
+        /**
+         * Invoice entities loaded on the heap.
+         */
+        HEAP,
+        /**
+         * Fixed-width invoice records in direct byte buffers, limited by {@code -XX:MaxDirectMemorySize}.
+         */
+        DIRECT,
+        /**
+         * Fixed-width invoice records in memory-mapped scratch files, can be bigger than the heap and physical memory.
+         */
+        MAPPED
+    }
+}
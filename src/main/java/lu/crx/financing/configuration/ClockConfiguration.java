@@ -0,0 +1,19 @@
+package lu.crx.financing.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class ClockConfiguration {
+
+    /**
+     * System clock used to pin the financing date of a run.
+     * Tests reproduce historical runs by overriding it with a {@code @Primary} fixed clock.
+     */
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
@@ -0,0 +1,23 @@
+package lu.crx.financing.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the incremental financing of invoices on their creation.
+ *
+ * @param enabled       whether invoices are financed on creation, otherwise they wait for the next sweep
+ * @param workers       number of financing worker threads
+ * @param queueCapacity maximum number of queued invoices, invoices over the capacity are left for the next sweep
+ * @param batchSize     maximum number of invoices financed and written in one transaction
+ * @param batchWindow   how long a worker waits for more invoices before financing the batch
+ */
+@ConfigurationProperties(prefix = "financing.incremental")
+public record IncrementalFinancingProperties(@DefaultValue("false") boolean enabled,
+                                             @DefaultValue("2") int workers,
+                                             @DefaultValue("10000") int queueCapacity,
+                                             @DefaultValue("500") int batchSize,
+                                             @DefaultValue("5ms") Duration batchWindow) {
+}
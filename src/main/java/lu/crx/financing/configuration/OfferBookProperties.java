@@ -0,0 +1,17 @@
+package lu.crx.financing.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the in-memory offer books of creditors.
+ *
+ * @param maxAge age after which the offer book of a creditor is reloaded from the database, unset by default,
+ *               i.e. books are never expired and only updated on the changes made by this instance;
+ *               to be set when other application instances change the financing settings, e.g. with workers of
+ *               the multi-worker financing mode, it then bounds how long an instance can finance at withdrawn settings
+ */
+@ConfigurationProperties(prefix = "financing.offer-book")
+public record OfferBookProperties(Duration maxAge) {
+}
@@ -0,0 +1,19 @@
+package lu.crx.financing.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the multi-worker financing mode.
+ * Offer books of every instance learn about the financing settings changed by other instances only after
+ * {@link OfferBookProperties#maxAge()}, which is to be set for this mode.
+ *
+ * @param shardCount    number of creditor shards, must not be changed while workers are running
+ * @param leaseDuration time after which the lease of a dead worker can be reclaimed by other workers
+ */
+@ConfigurationProperties(prefix = "financing.sharding")
+public record ShardingProperties(@DefaultValue("16") int shardCount,
+                                 @DefaultValue("5m") Duration leaseDuration) {
+}
@@ -3,6 +3,7 @@ package lu.crx.financing.entities;
 import java.io.Serializable;
 import jakarta.persistence.Basic;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -24,6 +25,7 @@ import lombok.ToString;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@EntityListeners(FinancingSettingsEntityListener.class)
 public class Creditor implements Serializable {
 
     @Id
@@ -3,6 +3,8 @@ package lu.crx.financing.entities;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDate;
+
 /**
  * Financing results with link to selected {@link Purchaser} for the {@link Invoice}
  */
@@ -26,4 +28,22 @@ public class FinancingAgreement {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "purchaser_id")
     private Purchaser purchaser;
+
+    /**
+     * The date on which the financing has occurred, pinned once per financing run.
+     */
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    /**
+     * Applied financing term: duration in days between the financing date and the invoice maturity date.
+     */
+    @Basic(optional = false)
+    private long financingTermInDays;
+
+    /**
+     * Applied financing rate for the invoice.
+     */
+    @Basic(optional = false)
+    private long financingRateInBps;
 }
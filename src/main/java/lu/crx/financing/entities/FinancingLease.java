@@ -0,0 +1,49 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Lease of a creditor shard claimed by a financing worker in multi-worker mode.
+ * Invoice belongs to the shard {@code creditorId % shardCount}, only the worker owning the lease finances it.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingLease {
+
+    @Id
+    private int shardId;
+
+    /**
+     * Worker currently holding the lease, null if the shard is not claimed.
+     */
+    @Basic
+    private String ownerId;
+
+    /**
+     * The lease is considered abandoned (e.g. the worker died) after this instant and can be reclaimed.
+     */
+    @Basic
+    private Instant leaseExpiresAt;
+
+    /**
+     * The moment the shard was financed for the last time.
+     * A sweep started before this moment doesn't need to finance the shard again.
+     */
+    @Basic
+    private Instant completedAt;
+}
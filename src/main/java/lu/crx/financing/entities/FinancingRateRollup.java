@@ -0,0 +1,31 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Histogram of financing rates per financing date, purchaser and creditor: number of financed invoices
+ * per financing rate. Rates are small integers in bps, so the histogram is exact.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingRateRollup {
+
+    @EmbeddedId
+    private FinancingRateRollupKey key;
+
+    @Basic(optional = false)
+    private long invoiceCount;
+}
@@ -0,0 +1,38 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Key of the {@link FinancingRateRollup}.
+ */
+@Embeddable
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingRateRollupKey implements Serializable {
+
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    @Basic(optional = false)
+    private long purchaserId;
+
+    @Basic(optional = false)
+    private long creditorId;
+
+    @Basic(optional = false)
+    private long financingRateInBps;
+}
@@ -0,0 +1,69 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Pre-aggregated {@link FinancingAgreement}s per financing date, purchaser, creditor and financing term bucket,
+ * maintained by the financing run together with every written chunk of agreements.
+ * Reporting reads the rollups instead of aggregating over all agreements and invoices.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingRollup {
+
+    /**
+     * Lower bounds of the financing term buckets in days, the last bucket is open-ended.
+     */
+    private static final int[] TERM_BUCKETS_IN_DAYS = {0, 30, 60, 90, 180, 360};
+
+    @EmbeddedId
+    private FinancingRollupKey key;
+
+    @Basic(optional = false)
+    private long invoiceCount;
+
+    @Basic(optional = false)
+    private long valueInCents;
+
+    @Basic(optional = false)
+    private long discountedAmountInCents;
+
+    @Basic(optional = false)
+    private long earlyPaymentAmountInCents;
+
+    /**
+     * Sum of the financing rates, the average rate is financingRateSumInBps / invoiceCount.
+     */
+    @Basic(optional = false)
+    private long financingRateSumInBps;
+
+    /**
+     * @return lower bounds of the financing term buckets in days, ascending
+     */
+    public static int[] termBucketsInDays() {
+        return TERM_BUCKETS_IN_DAYS.clone();
+    }
+
+    public static int termBucketInDays(long financingTermInDays) {
+        int bucket = TERM_BUCKETS_IN_DAYS[0];
+        for (int lowerBound : TERM_BUCKETS_IN_DAYS) {
+            if (financingTermInDays >= lowerBound) {
+                bucket = lowerBound;
+            }
+        }
+        return bucket;
+    }
+}
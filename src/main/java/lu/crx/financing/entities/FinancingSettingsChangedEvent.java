@@ -0,0 +1,29 @@
+package lu.crx.financing.entities;
+
+/**
+ * Published when the data determining which purchaser finances the invoice changes,
+ * delivered to transactional listeners once the transaction commits.
+ */
+public sealed interface FinancingSettingsChangedEvent {
+
+    /**
+     * The purchaser of new settings is not known from the settings, so only the creditor is identified.
+     */
+    record SettingsCreated(long creditorId) implements FinancingSettingsChangedEvent {
+    }
+
+    record SettingsUpdated(long settingsId, long creditorId, int annualRateInBps) implements FinancingSettingsChangedEvent {
+    }
+
+    record SettingsRemoved(long settingsId, long creditorId) implements FinancingSettingsChangedEvent {
+    }
+
+    record PurchaserUpdated(long purchaserId, int minimumFinancingTermInDays) implements FinancingSettingsChangedEvent {
+    }
+
+    record PurchaserRemoved(long purchaserId) implements FinancingSettingsChangedEvent {
+    }
+
+    record CreditorUpdated(long creditorId, int maxFinancingRateInBps) implements FinancingSettingsChangedEvent {
+    }
+}
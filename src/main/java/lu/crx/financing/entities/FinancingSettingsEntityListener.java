@@ -0,0 +1,55 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes {@link FinancingSettingsChangedEvent} for changes of {@link PurchaserFinancingSettings},
+ * {@link Purchaser} and {@link Creditor}. Instantiated by Spring through the Hibernate bean container.
+ */
+@Component
+@RequiredArgsConstructor
+public class FinancingSettingsEntityListener {
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    @PostPersist
+    public void entityPersisted(Object entity) {
+        if (entity instanceof PurchaserFinancingSettings settings) {
+            publish(new FinancingSettingsChangedEvent.SettingsCreated(settings.getCreditor().getId()));
+        }
+    }
+
+    @PostUpdate
+    public void entityUpdated(Object entity) {
+        switch (entity) {
+            case PurchaserFinancingSettings settings -> publish(new FinancingSettingsChangedEvent.SettingsUpdated(
+                    settings.getId(), settings.getCreditor().getId(), settings.getAnnualRateInBps()));
+            case Purchaser purchaser -> publish(new FinancingSettingsChangedEvent.PurchaserUpdated(
+                    purchaser.getId(), purchaser.getMinimumFinancingTermInDays()));
+            case Creditor creditor -> publish(new FinancingSettingsChangedEvent.CreditorUpdated(
+                    creditor.getId(), creditor.getMaxFinancingRateInBps()));
+            default -> {
+            }
+        }
+    }
+
+    @PostRemove
+    public void entityRemoved(Object entity) {
+        switch (entity) {
+            case PurchaserFinancingSettings settings -> publish(new FinancingSettingsChangedEvent.SettingsRemoved(
+                    settings.getId(), settings.getCreditor().getId()));
+            case Purchaser purchaser -> publish(new FinancingSettingsChangedEvent.PurchaserRemoved(purchaser.getId()));
+            default -> {
+            }
+        }
+    }
+
+    private void publish(FinancingSettingsChangedEvent event) {
+        applicationEventPublisher.publishEvent(event);
+    }
+}
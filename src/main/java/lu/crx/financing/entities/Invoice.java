@@ -21,6 +21,8 @@ import lombok.ToString;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@EntityListeners(InvoiceEntityListener.class)
+@Table(indexes = @Index(name = "invoice_financed_creditor_idx", columnList = "financed, creditor_id"))
 public class Invoice implements Serializable {
 
     @Id
@@ -71,8 +73,8 @@ public class Invoice implements Serializable {
 
     /**
      * Field added for potential performance improvement.
-     * Allows creating an index in the database to enable more efficient retrieval of only unprocessed invoices
-     * (e.g., where financed = false).
+     * Indexed together with the creditor to enable efficient retrieval of only unprocessed invoices
+     * (e.g., where financed = false), also of the given creditors only.
      */
     @Column
     private boolean financed;
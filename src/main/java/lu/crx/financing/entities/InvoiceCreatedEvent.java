@@ -0,0 +1,7 @@
+package lu.crx.financing.entities;
+
+/**
+ * Published when the {@link Invoice} is persisted, delivered to transactional listeners once the transaction commits.
+ */
+public record InvoiceCreatedEvent(long invoiceId) {
+}
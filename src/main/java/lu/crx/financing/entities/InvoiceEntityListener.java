@@ -0,0 +1,22 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.PostPersist;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes {@link InvoiceCreatedEvent} for every persisted {@link Invoice}.
+ * Instantiated by Spring through the Hibernate bean container.
+ */
+@Component
+@RequiredArgsConstructor
+public class InvoiceEntityListener {
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    @PostPersist
+    public void invoicePersisted(Invoice invoice) {
+        applicationEventPublisher.publishEvent(new InvoiceCreatedEvent(invoice.getId()));
+    }
+}
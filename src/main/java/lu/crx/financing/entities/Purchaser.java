@@ -24,6 +24,7 @@ import lombok.ToString;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@EntityListeners(FinancingSettingsEntityListener.class)
 public class Purchaser implements Serializable {
 
     @Id
@@ -20,6 +20,7 @@ import lombok.ToString;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@EntityListeners(FinancingSettingsEntityListener.class)
 public class PurchaserFinancingSettings implements Serializable {
 
     @Id
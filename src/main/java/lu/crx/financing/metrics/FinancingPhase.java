@@ -0,0 +1,24 @@
+package lu.crx.financing.metrics;
+
+/**
+ * Phases of the financing run measured by {@link FinancingRunMetrics}.
+ */
+public enum FinancingPhase {
+    /**
+     * Loading of unfinanced invoices.
+     */
+    LOAD_INVOICES,
+    /**
+     * Loading of offer books (purchasers and their financing settings) for the creditors of the invoices,
+     * only the books missing in memory are read from the database.
+     */
+    LOAD_PURCHASERS,
+    /**
+     * Selection of the purchaser and calculation of the financing results, measured per chunk of invoices.
+     */
+    COMPUTE,
+    /**
+     * Writing of financed invoices and financing agreements, measured per chunk of invoices.
+     */
+    WRITE
+}
@@ -0,0 +1,122 @@
+package lu.crx.financing.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency distributions and allocated bytes per phase of one financing run, see {@link FinancingRunReport}.
+ * Allocated bytes are measured for the current thread, so a phase has to be measured on a single thread.
+ * The time spent computing single invoices is sampled, to keep the timing out of most iterations of the hot loop.
+ * The metrics are confined to one thread, a long-lived instance (e.g. per worker) may collect many runs.
+ */
+public class FinancingRunMetrics {
+
+    /**
+     * Every n-th invoice compute is timed.
+     */
+    public static final int DEFAULT_INVOICE_COMPUTE_SAMPLING_INTERVAL = 64;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBeanWithAllocatedMemory();
+
+    private final long startedAtNanos = System.nanoTime();
+    private final Map<FinancingPhase, PhaseMetrics> phases = new EnumMap<>(FinancingPhase.class);
+    private final SingleThreadLatencyHistogram invoiceComputeLatency = new SingleThreadLatencyHistogram();
+    private final int invoiceComputeSamplingInterval;
+    private long invoiceComputes;
+    private long invoices;
+    private long financedInvoices;
+
+    public FinancingRunMetrics() {
+        this(DEFAULT_INVOICE_COMPUTE_SAMPLING_INTERVAL);
+    }
+
+    /**
+     * @param invoiceComputeSamplingInterval every n-th invoice compute is timed, 0 disables the timing
+     */
+    public FinancingRunMetrics(int invoiceComputeSamplingInterval) {
+        this.invoiceComputeSamplingInterval = invoiceComputeSamplingInterval;
+        Arrays.stream(FinancingPhase.values()).forEach(phase -> phases.put(phase, new PhaseMetrics()));
+    }
+
+    /**
+     * Starts the measurement of one occurrence of the phase, e.g. of one chunk, finished by {@link Measurement#close()}.
+     */
+    public Measurement measure(FinancingPhase phase) {
+        return new Measurement(phases.get(phase), System.nanoTime(), currentThreadAllocatedBytes());
+    }
+
+    /**
+     * Tells whether the next invoice compute is to be timed and passed to {@link #recordInvoiceCompute(long)}.
+     */
+    public boolean sampleInvoiceCompute() {
+        return invoiceComputeSamplingInterval > 0 && invoiceComputes++ % invoiceComputeSamplingInterval == 0;
+    }
+
+    /**
+     * Records the time spent computing the financing of a single invoice.
+     */
+    public void recordInvoiceCompute(long nanos) {
+        invoiceComputeLatency.record(nanos);
+    }
+
+    public void addInvoices(long invoices, long financedInvoices) {
+        this.invoices += invoices;
+        this.financedInvoices += financedInvoices;
+    }
+
+    public FinancingRunReport report() {
+        List<FinancingRunReport.PhaseReport> phaseReports = phases.entrySet().stream()
+                .map(entry -> new FinancingRunReport.PhaseReport(entry.getKey(),
+                        entry.getValue().totalNanos / 1_000_000,
+                        entry.getValue().allocatedBytes,
+                        entry.getValue().latency.summary()))
+                .toList();
+        return new FinancingRunReport(invoices, financedInvoices, (System.nanoTime() - startedAtNanos) / 1_000_000,
+                THREAD_MX_BEAN != null, phaseReports, invoiceComputeLatency.summary());
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return THREAD_MX_BEAN == null ? 0L : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBeanWithAllocatedMemory() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean
+                && threadMXBean.isThreadAllocatedMemorySupported()) {
+            if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                threadMXBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return threadMXBean;
+        }
+        return null;
+    }
+
+    private static class PhaseMetrics {
+        private final SingleThreadLatencyHistogram latency = new SingleThreadLatencyHistogram();
+        private long totalNanos;
+        private long allocatedBytes;
+    }
+
+    public static class Measurement implements AutoCloseable {
+
+        private final PhaseMetrics phaseMetrics;
+        private final long startedAtNanos;
+        private final long allocatedBytesAtStart;
+
+        private Measurement(PhaseMetrics phaseMetrics, long startedAtNanos, long allocatedBytesAtStart) {
+            this.phaseMetrics = phaseMetrics;
+            this.startedAtNanos = startedAtNanos;
+            this.allocatedBytesAtStart = allocatedBytesAtStart;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startedAtNanos;
+            phaseMetrics.latency.record(nanos);
+            phaseMetrics.totalNanos += nanos;
+            phaseMetrics.allocatedBytes += currentThreadAllocatedBytes() - allocatedBytesAtStart;
+        }
+    }
+}
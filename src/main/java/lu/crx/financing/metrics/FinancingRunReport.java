@@ -0,0 +1,21 @@
+package lu.crx.financing.metrics;
+
+import java.util.List;
+
+/**
+ * Summary of one financing run, logged at its end.
+ *
+ * @param allocationMeasured   false if the JVM doesn't support measuring of allocated bytes per thread
+ * @param invoiceComputeLatency distribution of the time spent computing the financing of a single invoice,
+ *                              sampled, see {@link FinancingRunMetrics#sampleInvoiceCompute()}
+ */
+public record FinancingRunReport(long invoices, long financedInvoices, long totalMs, boolean allocationMeasured,
+                                 List<PhaseReport> phases, LatencyHistogram.LatencySummary invoiceComputeLatency) {
+
+    /**
+     * @param latency distribution of the phase occurrences, e.g. per chunk for {@link FinancingPhase#WRITE}
+     */
+    public record PhaseReport(FinancingPhase phase, long totalMs, long allocatedBytes,
+                              LatencyHistogram.LatencySummary latency) {
+    }
+}
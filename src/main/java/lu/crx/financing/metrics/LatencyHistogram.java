@@ -0,0 +1,111 @@
+package lu.crx.financing.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Lock-free latency histogram in the spirit of HdrHistogram: values below 64 are counted exactly,
+ * bigger values in log-linear buckets with 32 sub-buckets per power of two, i.e. with relative error below 3.2%.
+ * Values are recorded in nanoseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = EXACT_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long maxNanos() {
+        return max.get();
+    }
+
+    public long meanNanos() {
+        long recorded = count.get();
+        return recorded == 0 ? 0L : sum.get() / recorded;
+    }
+
+    /**
+     * Returns the highest value equivalent to the value at the given percentile (0-100),
+     * i.e. the value is accurate to the bucket precision and never underestimated.
+     */
+    public long valueAtPercentileNanos(double percentile) {
+        return valueAtPercentileNanos(percentile, count.get(), max.get(), counts::get);
+    }
+
+    /**
+     * Summary of the distribution in milliseconds, e.g. for logging.
+     */
+    public LatencySummary summary() {
+        return summary(count(), meanNanos(), maxNanos(), this::valueAtPercentileNanos);
+    }
+
+    static long valueAtPercentileNanos(double percentile, long recorded, long max, IntToLongFunction countInBucket) {
+        if (recorded == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += countInBucket.applyAsLong(i);
+            if (seen >= rank) {
+                return Math.min(highestValueInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    static LatencySummary summary(long count, long meanNanos, long maxNanos, DoubleToLongFunction valueAtPercentileNanos) {
+        return new LatencySummary(count,
+                toMillis(meanNanos),
+                toMillis(valueAtPercentileNanos.applyAsLong(50)),
+                toMillis(valueAtPercentileNanos.applyAsLong(90)),
+                toMillis(valueAtPercentileNanos.applyAsLong(99)),
+                toMillis(valueAtPercentileNanos.applyAsLong(99.9)),
+                toMillis(maxNanos));
+    }
+
+    static int bucketIndex(long value) {
+        if (value < EXACT_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return EXACT_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < EXACT_BUCKETS) {
+            return index;
+        }
+        int shift = (index - EXACT_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - EXACT_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public record LatencySummary(long count, double meanMs, double p50Ms, double p90Ms, double p99Ms, double p999Ms,
+                                 double maxMs) {
+    }
+}
@@ -0,0 +1,36 @@
+package lu.crx.financing.metrics;
+
+/**
+ * Counterpart of {@link LatencyHistogram} for a single thread, with the same buckets but plain counters.
+ * The buckets are allocated on the first recorded value, so that unused histograms cost next to nothing.
+ */
+final class SingleThreadLatencyHistogram {
+
+    private long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+    void record(long nanos) {
+        if (counts == null) {
+            counts = new long[LatencyHistogram.BUCKETS];
+        }
+        long value = Math.max(0L, nanos);
+        counts[LatencyHistogram.bucketIndex(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long valueAtPercentileNanos(double percentile) {
+        return LatencyHistogram.valueAtPercentileNanos(percentile, count, max, index -> counts[index]);
+    }
+
+    LatencyHistogram.LatencySummary summary() {
+        return LatencyHistogram.summary(count, count == 0 ? 0L : sum / count, max, this::valueAtPercentileNanos);
+    }
+}
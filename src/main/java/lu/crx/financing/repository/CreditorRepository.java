@@ -0,0 +1,20 @@
+package lu.crx.financing.repository;
+
+import lu.crx.financing.entities.Creditor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CreditorRepository extends JpaRepository<Creditor, Long> {
+
+    /**
+     * Resolves the creditors of the shard, the creditor table is small compared to the invoice table,
+     * so the shard is resolved here instead of over the invoices.
+     */
+    @Query("SELECT c.id FROM Creditor c WHERE MOD(c.id, :shardCount) = :shardId")
+    List<Long> findIdsByShard(@Param("shardId") int shardId, @Param("shardCount") int shardCount);
+}
@@ -0,0 +1,23 @@
+package lu.crx.financing.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Volume financed by the purchaser for the creditor on the financing date.
+ */
+public interface DailyVolumeView {
+
+    LocalDate getFinancingDate();
+
+    long getPurchaserId();
+
+    long getCreditorId();
+
+    long getInvoiceCount();
+
+    long getValueInCents();
+
+    long getDiscountedAmountInCents();
+
+    long getEarlyPaymentAmountInCents();
+}
@@ -0,0 +1,42 @@
+package lu.crx.financing.repository;
+
+import jakarta.persistence.LockModeType;
+import lu.crx.financing.entities.FinancingLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface FinancingLeaseRepository extends JpaRepository<FinancingLease, Integer> {
+
+    /**
+     * Locks the first shard which is neither leased nor financed since the sweep started.
+     * Shards locked by other workers are skipped instead of waited for, so concurrent workers claim disjoint shards.
+     */
+    @Query(value = "SELECT * FROM financing_lease " +
+            "WHERE (lease_expires_at IS NULL OR lease_expires_at < :now) " +
+            "AND (completed_at IS NULL OR completed_at < :sweepStartedAt) " +
+            "ORDER BY shard_id " +
+            "LIMIT 1 " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<FinancingLease> lockClaimableShard(@Param("now") Instant now, @Param("sweepStartedAt") Instant sweepStartedAt);
+
+    /**
+     * Locks the lease if it is still owned by the worker, used to fence off a worker which lost its lease.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<FinancingLease> findByShardIdAndOwnerId(int shardId, String ownerId);
+
+    /**
+     * Plain insert instead of save(), which would merge into the lease concurrently created and claimed by another worker.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO financing_lease (shard_id) VALUES (:shardId)", nativeQuery = true)
+    void insertLease(@Param("shardId") int shardId);
+}
@@ -0,0 +1,22 @@
+package lu.crx.financing.repository;
+
+import lu.crx.financing.entities.FinancingRateRollup;
+import lu.crx.financing.entities.FinancingRateRollupKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface FinancingRateRollupRepository extends JpaRepository<FinancingRateRollup, FinancingRateRollupKey> {
+
+    @Query("SELECT r FROM FinancingRateRollup r " +
+            "WHERE r.key.financingDate = :financingDate AND r.key.purchaserId = :purchaserId AND r.key.creditorId = :creditorId " +
+            "ORDER BY r.key.financingRateInBps")
+    List<FinancingRateRollup> findRateHistogram(@Param("financingDate") LocalDate financingDate,
+                                                @Param("purchaserId") long purchaserId,
+                                                @Param("creditorId") long creditorId);
+}
@@ -0,0 +1,32 @@
+package lu.crx.financing.repository;
+
+import lu.crx.financing.entities.FinancingRateRollup;
+import lu.crx.financing.entities.FinancingRollup;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Batched increments of the rollups, executed over plain JDBC so that a transaction of financing
+ * updates every rollup row once, without reading it first.
+ */
+public interface FinancingRollupBatchRepository {
+
+    /**
+     * Adds the counts and sums of the given rollups to the stored ones, creating the missing rollups.
+     * Has to be called within a transaction.
+     */
+    void incrementRollups(Collection<FinancingRollup> rollups);
+
+    /**
+     * Adds the counts of the given rate rollups to the stored ones, creating the missing rollups.
+     * Has to be called within a transaction.
+     */
+    void incrementRateRollups(Collection<FinancingRateRollup> rateRollups);
+
+    /**
+     * Replaces the rollups of the financing dates by the aggregates of the stored financing agreements.
+     * Has to be called within a transaction.
+     */
+    void rebuildRollups(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,164 @@
+package lu.crx.financing.repository;
+
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.entities.FinancingRateRollup;
+import lu.crx.financing.entities.FinancingRollup;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rollups are incremented, or created when missing, by MERGE statements on the connection of the financing
+ * transaction. Concurrent transactions may both create the same rollup, the losing one gets a duplicate key,
+ * rolls back to the savepoint taken before the statements and repeats them, finding the rollup created.
+ * The rollups are merged in the key order, so that concurrent transactions lock the rollups in the same order.
+ * Rollups of past financing dates are rebuilt from the agreements by INSERT ... SELECT ... GROUP BY.
+ */
+@RequiredArgsConstructor
+public class FinancingRollupBatchRepositoryImpl implements FinancingRollupBatchRepository {
+
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+
+    private static final Comparator<FinancingRollup> ROLLUP_ORDER = Comparator
+            .comparing((FinancingRollup rollup) -> rollup.getKey().getFinancingDate())
+            .thenComparingLong(rollup -> rollup.getKey().getPurchaserId())
+            .thenComparingLong(rollup -> rollup.getKey().getCreditorId())
+            .thenComparingInt(rollup -> rollup.getKey().getTermBucketInDays());
+
+    private static final Comparator<FinancingRateRollup> RATE_ROLLUP_ORDER = Comparator
+            .comparing((FinancingRateRollup rateRollup) -> rateRollup.getKey().getFinancingDate())
+            .thenComparingLong(rateRollup -> rateRollup.getKey().getPurchaserId())
+            .thenComparingLong(rateRollup -> rateRollup.getKey().getCreditorId())
+            .thenComparingLong(rateRollup -> rateRollup.getKey().getFinancingRateInBps());
+
+    private static final String MERGE_ROLLUP = "MERGE INTO financing_rollup r " +
+            "USING (VALUES (CAST(? AS DATE), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS INTEGER), " +
+            "CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT))) " +
+            "AS s (financing_date, purchaser_id, creditor_id, term_bucket_in_days, invoice_count, value_in_cents, " +
+            "discounted_amount_in_cents, early_payment_amount_in_cents, financing_rate_sum_in_bps) " +
+            "ON r.financing_date = s.financing_date AND r.purchaser_id = s.purchaser_id " +
+            "AND r.creditor_id = s.creditor_id AND r.term_bucket_in_days = s.term_bucket_in_days " +
+            "WHEN MATCHED THEN UPDATE SET invoice_count = r.invoice_count + s.invoice_count, " +
+            "value_in_cents = r.value_in_cents + s.value_in_cents, " +
+            "discounted_amount_in_cents = r.discounted_amount_in_cents + s.discounted_amount_in_cents, " +
+            "early_payment_amount_in_cents = r.early_payment_amount_in_cents + s.early_payment_amount_in_cents, " +
+            "financing_rate_sum_in_bps = r.financing_rate_sum_in_bps + s.financing_rate_sum_in_bps " +
+            "WHEN NOT MATCHED THEN INSERT (financing_date, purchaser_id, creditor_id, term_bucket_in_days, invoice_count, " +
+            "value_in_cents, discounted_amount_in_cents, early_payment_amount_in_cents, financing_rate_sum_in_bps) " +
+            "VALUES (s.financing_date, s.purchaser_id, s.creditor_id, s.term_bucket_in_days, s.invoice_count, " +
+            "s.value_in_cents, s.discounted_amount_in_cents, s.early_payment_amount_in_cents, s.financing_rate_sum_in_bps)";
+
+    private static final String MERGE_RATE_ROLLUP = "MERGE INTO financing_rate_rollup r " +
+            "USING (VALUES (CAST(? AS DATE), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT))) " +
+            "AS s (financing_date, purchaser_id, creditor_id, financing_rate_in_bps, invoice_count) " +
+            "ON r.financing_date = s.financing_date AND r.purchaser_id = s.purchaser_id " +
+            "AND r.creditor_id = s.creditor_id AND r.financing_rate_in_bps = s.financing_rate_in_bps " +
+            "WHEN MATCHED THEN UPDATE SET invoice_count = r.invoice_count + s.invoice_count " +
+            "WHEN NOT MATCHED THEN INSERT (financing_date, purchaser_id, creditor_id, financing_rate_in_bps, invoice_count) " +
+            "VALUES (s.financing_date, s.purchaser_id, s.creditor_id, s.financing_rate_in_bps, s.invoice_count)";
+
+    private static final String REBUILD_ROLLUPS = "INSERT INTO financing_rollup (financing_date, purchaser_id, " +
+            "creditor_id, term_bucket_in_days, invoice_count, value_in_cents, discounted_amount_in_cents, " +
+            "early_payment_amount_in_cents, financing_rate_sum_in_bps) " +
+            "SELECT a.financing_date, a.purchaser_id, a.creditor_id, a.term_bucket_in_days, COUNT(*), " +
+            "SUM(a.discounted_amount_in_cents + a.early_payment_amount_in_cents), SUM(a.discounted_amount_in_cents), " +
+            "SUM(a.early_payment_amount_in_cents), SUM(a.financing_rate_in_bps) " +
+            "FROM (SELECT fa.financing_date, fa.purchaser_id, i.creditor_id, " + termBucketCase("fa.financing_term_in_days") +
+            " AS term_bucket_in_days, i.discounted_amount_in_cents, i.early_payment_amount_in_cents, fa.financing_rate_in_bps " +
+            "FROM financing_agreement fa JOIN invoice i ON i.id = fa.invoice_id " +
+            "WHERE fa.financing_date BETWEEN ? AND ?) a " +
+            "GROUP BY a.financing_date, a.purchaser_id, a.creditor_id, a.term_bucket_in_days";
+
+    private static final String REBUILD_RATE_ROLLUPS = "INSERT INTO financing_rate_rollup (financing_date, purchaser_id, " +
+            "creditor_id, financing_rate_in_bps, invoice_count) " +
+            "SELECT fa.financing_date, fa.purchaser_id, i.creditor_id, fa.financing_rate_in_bps, COUNT(*) " +
+            "FROM financing_agreement fa JOIN invoice i ON i.id = fa.invoice_id " +
+            "WHERE fa.financing_date BETWEEN ? AND ? " +
+            "GROUP BY fa.financing_date, fa.purchaser_id, i.creditor_id, fa.financing_rate_in_bps";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void incrementRollups(Collection<FinancingRollup> rollups) {
+        if (rollups.isEmpty()) {
+            return;
+        }
+        List<FinancingRollup> sortedRollups = rollups.stream().sorted(ROLLUP_ORDER).toList();
+        mergeWithRetry(() -> jdbcTemplate.batchUpdate(MERGE_ROLLUP, sortedRollups, sortedRollups.size(), (statement, rollup) -> {
+            statement.setDate(1, Date.valueOf(rollup.getKey().getFinancingDate()));
+            statement.setLong(2, rollup.getKey().getPurchaserId());
+            statement.setLong(3, rollup.getKey().getCreditorId());
+            statement.setInt(4, rollup.getKey().getTermBucketInDays());
+            statement.setLong(5, rollup.getInvoiceCount());
+            statement.setLong(6, rollup.getValueInCents());
+            statement.setLong(7, rollup.getDiscountedAmountInCents());
+            statement.setLong(8, rollup.getEarlyPaymentAmountInCents());
+            statement.setLong(9, rollup.getFinancingRateSumInBps());
+        }));
+    }
+
+    @Override
+    public void incrementRateRollups(Collection<FinancingRateRollup> rateRollups) {
+        if (rateRollups.isEmpty()) {
+            return;
+        }
+        List<FinancingRateRollup> sortedRateRollups = rateRollups.stream().sorted(RATE_ROLLUP_ORDER).toList();
+        mergeWithRetry(() -> jdbcTemplate.batchUpdate(MERGE_RATE_ROLLUP, sortedRateRollups, sortedRateRollups.size(),
+                (statement, rateRollup) -> {
+                    statement.setDate(1, Date.valueOf(rateRollup.getKey().getFinancingDate()));
+                    statement.setLong(2, rateRollup.getKey().getPurchaserId());
+                    statement.setLong(3, rateRollup.getKey().getCreditorId());
+                    statement.setLong(4, rateRollup.getKey().getFinancingRateInBps());
+                    statement.setLong(5, rateRollup.getInvoiceCount());
+                }));
+    }
+
+    @Override
+    public void rebuildRollups(LocalDate from, LocalDate to) {
+        Date fromDate = Date.valueOf(from);
+        Date toDate = Date.valueOf(to);
+        jdbcTemplate.update("DELETE FROM financing_rollup WHERE financing_date BETWEEN ? AND ?", fromDate, toDate);
+        jdbcTemplate.update("DELETE FROM financing_rate_rollup WHERE financing_date BETWEEN ? AND ?", fromDate, toDate);
+        jdbcTemplate.update(REBUILD_ROLLUPS, fromDate, toDate);
+        jdbcTemplate.update(REBUILD_RATE_ROLLUPS, fromDate, toDate);
+    }
+
+    /**
+     * SQL counterpart of {@link FinancingRollup#termBucketInDays(long)}.
+     */
+    private static String termBucketCase(String financingTermColumn) {
+        int[] termBucketsInDays = FinancingRollup.termBucketsInDays();
+        StringBuilder termBucketCase = new StringBuilder("CASE");
+        for (int i = termBucketsInDays.length - 1; i > 0; i--) {
+            termBucketCase.append(" WHEN ").append(financingTermColumn).append(" >= ").append(termBucketsInDays[i])
+                    .append(" THEN ").append(termBucketsInDays[i]);
+        }
+        return termBucketCase.append(" ELSE ").append(termBucketsInDays[0]).append(" END").toString();
+    }
+
+    private void mergeWithRetry(Runnable merge) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            for (int attempt = 1; ; attempt++) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    merge.run();
+                    connection.releaseSavepoint(savepoint);
+                    return null;
+                } catch (DuplicateKeyException e) {
+                    // created concurrently by another transaction, the next attempt updates it
+                    connection.rollback(savepoint);
+                    if (attempt == MAX_MERGE_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package lu.crx.financing.repository;
+
+import lu.crx.financing.entities.FinancingRollup;
+import lu.crx.financing.entities.FinancingRollupKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface FinancingRollupRepository extends JpaRepository<FinancingRollup, FinancingRollupKey>, FinancingRollupBatchRepository {
+
+    @Query("SELECT r.key.financingDate AS financingDate, r.key.purchaserId AS purchaserId, r.key.creditorId AS creditorId, " +
+            "SUM(r.invoiceCount) AS invoiceCount, SUM(r.valueInCents) AS valueInCents, " +
+            "SUM(r.discountedAmountInCents) AS discountedAmountInCents, SUM(r.earlyPaymentAmountInCents) AS earlyPaymentAmountInCents " +
+            "FROM FinancingRollup r WHERE r.key.financingDate BETWEEN :from AND :to " +
+            "GROUP BY r.key.financingDate, r.key.purchaserId, r.key.creditorId " +
+            "ORDER BY r.key.financingDate, r.key.purchaserId, r.key.creditorId")
+    List<DailyVolumeView> findDailyVolumes(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT r.key.termBucketInDays AS termBucketInDays, SUM(r.invoiceCount) AS invoiceCount, " +
+            "CAST(SUM(r.financingRateSumInBps) AS double) / SUM(r.invoiceCount) AS averageFinancingRateInBps " +
+            "FROM FinancingRollup r WHERE r.key.financingDate BETWEEN :from AND :to " +
+            "GROUP BY r.key.termBucketInDays ORDER BY r.key.termBucketInDays")
+    List<TermBucketRateView> findAverageRatesByTermBucket(@Param("from") LocalDate from, @Param("to") LocalDate to);
+}
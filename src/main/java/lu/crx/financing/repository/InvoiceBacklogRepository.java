@@ -0,0 +1,46 @@
+package lu.crx.financing.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+
+/**
+ * Plain JDBC read of unfinanced invoices, bypassing the persistence context.
+ */
+@Repository
+public class InvoiceBacklogRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    public InvoiceBacklogRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Streams unfinanced invoices row by row into the consumer, without materializing them on the heap.
+     * The query runs in a read-only transaction, as PostgreSQL and MySQL only honour the fetch size
+     * with auto-commit off and otherwise send the whole result set at once.
+     */
+    public void loadUnfinancedInvoices(InvoiceRecordConsumer consumer, int fetchSize) {
+        readOnlyTransactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            "SELECT id, creditor_id, maturity_date, value_in_cents FROM invoice WHERE financed = false");
+                    statement.setFetchSize(fetchSize);
+                    return statement;
+                },
+                resultSet -> {
+                    consumer.accept(resultSet.getLong(1),
+                            resultSet.getLong(2),
+                            resultSet.getObject(3, LocalDate.class).toEpochDay(),
+                            resultSet.getLong(4));
+                }));
+    }
+}
@@ -0,0 +1,21 @@
+package lu.crx.financing.repository;
+
+import java.util.List;
+
+/**
+ * Batched writes of financing results, executed over plain JDBC so that they don't trigger
+ * a flush of the persistence context per updated invoice.
+ */
+public interface InvoiceBatchRepository {
+
+    /**
+     * Marks invoices as financed in one JDBC batch. Only not yet financed invoices are updated, so that the invoice
+     * financed concurrently (e.g. by the incremental financing and the sweep) is not financed twice.
+     *
+     * @return for each given invoice, in the given order, whether the invoice has been updated
+     */
+    boolean[] updateFinancedInvoices(List<FinancedInvoice> financedInvoices);
+
+    record FinancedInvoice(long invoiceId, long earlyPaymentAmountInCents, long discountedAmountInCents) {
+    }
+}
@@ -0,0 +1,44 @@
+package lu.crx.financing.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+@RequiredArgsConstructor
+public class InvoiceBatchRepositoryImpl implements InvoiceBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public boolean[] updateFinancedInvoices(List<FinancedInvoice> financedInvoices) {
+        // rows are locked in the order of their ids, so concurrent batches can't deadlock each other
+        List<Integer> positionsById = IntStream.range(0, financedInvoices.size()).boxed()
+                .sorted(Comparator.comparingLong(position -> financedInvoices.get(position).invoiceId()))
+                .toList();
+        int[][] updateCounts = jdbcTemplate.batchUpdate(
+                "UPDATE invoice SET financed = true, early_payment_amount_in_cents = ?, discounted_amount_in_cents = ? " +
+                        "WHERE id = ? AND financed = false",
+                positionsById,
+                positionsById.size(),
+                (statement, position) -> {
+                    FinancedInvoice financedInvoice = financedInvoices.get(position);
+                    statement.setLong(1, financedInvoice.earlyPaymentAmountInCents());
+                    statement.setLong(2, financedInvoice.discountedAmountInCents());
+                    statement.setLong(3, financedInvoice.invoiceId());
+                });
+
+        boolean[] updated = new boolean[financedInvoices.size()];
+        int i = 0;
+        for (int[] batchUpdateCounts : updateCounts) {
+            for (int updateCount : batchUpdateCounts) {
+                // drivers which don't report the count of a batched statement are trusted to have updated the row
+                updated[positionsById.get(i++)] = updateCount > 0 || updateCount == Statement.SUCCESS_NO_INFO;
+            }
+        }
+        return updated;
+    }
+}
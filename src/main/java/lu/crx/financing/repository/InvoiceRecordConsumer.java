@@ -0,0 +1,10 @@
+package lu.crx.financing.repository;
+
+/**
+ * Receives unfinanced invoices streamed by {@link InvoiceBacklogRepository} as plain values, one row at a time.
+ */
+@FunctionalInterface
+public interface InvoiceRecordConsumer {
+
+    void accept(long invoiceId, long creditorId, long maturityEpochDay, long valueInCents);
+}
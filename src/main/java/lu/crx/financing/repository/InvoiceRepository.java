@@ -2,29 +2,20 @@ package lu.crx.financing.repository;
 
 import lu.crx.financing.entities.Invoice;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+public interface InvoiceRepository extends JpaRepository<Invoice, Long>, InvoiceBatchRepository {
 
     List<Invoice> findAllByFinanced(boolean financed);
 
-    /**
-     * For processing multiple invoices it will be better to use
-     * namedParameterJdbcOperations.batchUpdate(sql, batch);
-     */
-    @Transactional
-    @Modifying
-    @Query("UPDATE Invoice " +
-            "SET financed = :financed," +
-            "earlyPaymentAmountInCents = :earlyPaymentAmountInCents," +
-            "discountedAmountInCents = :discountedAmountInCents" +
-            " WHERE id = :id")
-    void updateInvoice(@Param("id") long id, @Param("financed") boolean financed, @Param("earlyPaymentAmountInCents") long earlyPaymentAmountInCents, @Param("discountedAmountInCents") long discountedAmountInCents);
+    @Query("SELECT i FROM Invoice i WHERE i.financed = false AND i.creditor.id IN (:creditorsId)")
+    List<Invoice> findUnfinancedByCreditorsId(@Param("creditorsId") Collection<Long> creditorsId);
+
+    List<Invoice> findAllByIdInAndFinanced(Collection<Long> ids, boolean financed);
 }
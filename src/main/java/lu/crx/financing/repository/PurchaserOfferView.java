@@ -0,0 +1,20 @@
+package lu.crx.financing.repository;
+
+/**
+ * Flat projection of the {@link lu.crx.financing.entities.PurchaserFinancingSettings} together with its purchaser
+ * and creditor, i.e. one offer of the purchaser to finance invoices of the creditor.
+ */
+public interface PurchaserOfferView {
+
+    long getSettingsId();
+
+    long getPurchaserId();
+
+    long getCreditorId();
+
+    int getMinimumFinancingTermInDays();
+
+    int getAnnualRateInBps();
+
+    int getMaxFinancingRateInBps();
+}
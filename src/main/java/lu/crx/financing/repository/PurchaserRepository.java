@@ -3,6 +3,7 @@ package lu.crx.financing.repository;
 import lu.crx.financing.entities.Purchaser;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,6 +12,9 @@ import java.util.Set;
 @Repository
 public interface PurchaserRepository extends JpaRepository<Purchaser, Long> {
 
-    @Query("SELECT p, pfs.creditor.id FROM Purchaser p join fetch p.purchaserFinancingSettings pfs where pfs.creditor.id IN (:creditorsId)")
-    List<Purchaser> findPurchasersByCreditorsId(Set<Long> creditorsId);
+    @Query("SELECT pfs.id AS settingsId, p.id AS purchaserId, c.id AS creditorId, " +
+            "p.minimumFinancingTermInDays AS minimumFinancingTermInDays, pfs.annualRateInBps AS annualRateInBps, " +
+            "c.maxFinancingRateInBps AS maxFinancingRateInBps " +
+            "FROM Purchaser p JOIN p.purchaserFinancingSettings pfs JOIN pfs.creditor c WHERE c.id IN (:creditorsId)")
+    List<PurchaserOfferView> findOffersByCreditorsId(@Param("creditorsId") Set<Long> creditorsId);
 }
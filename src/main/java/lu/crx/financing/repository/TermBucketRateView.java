@@ -0,0 +1,13 @@
+package lu.crx.financing.repository;
+
+/**
+ * Average financing rate of the invoices financed with the term in the bucket.
+ */
+public interface TermBucketRateView {
+
+    int getTermBucketInDays();
+
+    long getInvoiceCount();
+
+    double getAverageFinancingRateInBps();
+}
@@ -0,0 +1,145 @@
+package lu.crx.financing.services;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable offers of purchasers to finance invoices of one creditor, sorted ascending by the annual rate.
+ * The financing rate grows with the annual rate for the same term, so the first offer meeting the purchaser's
+ * minimum financing term is the cheapest eligible one, unless it exceeds the creditor's maximum financing rate,
+ * in which case no offer is eligible.
+ * Changes create a new book, so the book can be read concurrently without locking.
+ * The sorted offers are held in a private array, never exposed, so that the selection can't be broken by callers.
+ */
+public final class CreditorOfferBook {
+
+    static final int DAYS_IN_YEAR = 360;
+    private static final Comparator<Offer> BY_ANNUAL_RATE = Comparator.comparingInt(Offer::annualRateInBps)
+            .thenComparingLong(Offer::settingsId);
+
+    private final long creditorId;
+    private final int maxFinancingRateInBps;
+    private final Offer[] offers;
+    private final long loadedAtNanos;
+
+    private CreditorOfferBook(long creditorId, int maxFinancingRateInBps, Offer[] offers, long loadedAtNanos) {
+        this.creditorId = creditorId;
+        this.maxFinancingRateInBps = maxFinancingRateInBps;
+        this.offers = offers;
+        this.loadedAtNanos = loadedAtNanos;
+    }
+
+    public static CreditorOfferBook of(long creditorId, int maxFinancingRateInBps, List<Offer> offers, long loadedAtNanos) {
+        Offer[] sortedOffers = offers.toArray(Offer[]::new);
+        Arrays.sort(sortedOffers, BY_ANNUAL_RATE);
+        return new CreditorOfferBook(creditorId, maxFinancingRateInBps, sortedOffers, loadedAtNanos);
+    }
+
+    public long creditorId() {
+        return creditorId;
+    }
+
+    public int maxFinancingRateInBps() {
+        return maxFinancingRateInBps;
+    }
+
+    /**
+     * @return unmodifiable offers sorted ascending by the annual rate
+     */
+    public List<Offer> offers() {
+        return List.of(offers);
+    }
+
+    public long loadedAtNanos() {
+        return loadedAtNanos;
+    }
+
+    /**
+     * Selects the offer with the lowest financing rate for the financing term, walking the offers
+     * from the cheapest one and stopping at the first one meeting the minimum financing term,
+     * i.e. whose minimum financing term is less than or equal to the financing term.
+     *
+     * @return the best offer or null if no offer is eligible
+     */
+    public Offer selectBestOffer(long financingTermInDays) {
+        for (Offer offer : offers) {
+            if (offer.minimumFinancingTermInDays() <= financingTermInDays) {
+                return offer.financingRateInBps(financingTermInDays) <= maxFinancingRateInBps ? offer : null;
+            }
+        }
+        return null;
+    }
+
+    public CreditorOfferBook withMaxFinancingRate(int maxFinancingRateInBps) {
+        return new CreditorOfferBook(creditorId, maxFinancingRateInBps, offers, loadedAtNanos);
+    }
+
+    public CreditorOfferBook withAnnualRate(long settingsId, int annualRateInBps) {
+        return withChangedOffers(offer -> offer.settingsId() == settingsId,
+                offer -> new Offer(offer.settingsId(), offer.purchaserId(), annualRateInBps, offer.minimumFinancingTermInDays()));
+    }
+
+    public CreditorOfferBook withMinimumFinancingTerm(long purchaserId, int minimumFinancingTermInDays) {
+        return withChangedOffers(offer -> offer.purchaserId() == purchaserId,
+                offer -> new Offer(offer.settingsId(), offer.purchaserId(), offer.annualRateInBps(), minimumFinancingTermInDays));
+    }
+
+    public CreditorOfferBook withoutSettings(long settingsId) {
+        return withoutOffers(offer -> offer.settingsId() == settingsId);
+    }
+
+    public CreditorOfferBook withoutPurchaser(long purchaserId) {
+        return withoutOffers(offer -> offer.purchaserId() == purchaserId);
+    }
+
+    private CreditorOfferBook withChangedOffers(Predicate<Offer> changed, UnaryOperator<Offer> change) {
+        if (Arrays.stream(offers).noneMatch(changed)) {
+            return this;
+        }
+        return of(creditorId, maxFinancingRateInBps,
+                Arrays.stream(offers).map(offer -> changed.test(offer) ? change.apply(offer) : offer).toList(),
+                loadedAtNanos);
+    }
+
+    private CreditorOfferBook withoutOffers(Predicate<Offer> removed) {
+        if (Arrays.stream(offers).noneMatch(removed)) {
+            return this;
+        }
+        return new CreditorOfferBook(creditorId, maxFinancingRateInBps,
+                Arrays.stream(offers).filter(removed.negate()).toArray(Offer[]::new), loadedAtNanos);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CreditorOfferBook book
+                && creditorId == book.creditorId
+                && maxFinancingRateInBps == book.maxFinancingRateInBps
+                && loadedAtNanos == book.loadedAtNanos
+                && Arrays.equals(offers, book.offers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(creditorId, maxFinancingRateInBps, loadedAtNanos, Arrays.hashCode(offers));
+    }
+
+    @Override
+    public String toString() {
+        return "CreditorOfferBook[creditorId=" + creditorId + ", maxFinancingRateInBps=" + maxFinancingRateInBps
+                + ", offers=" + Arrays.toString(offers) + ", loadedAtNanos=" + loadedAtNanos + "]";
+    }
+
+    /**
+     * Offer defined by the {@link lu.crx.financing.entities.PurchaserFinancingSettings} of the purchaser.
+     */
+    public record Offer(long settingsId, long purchaserId, int annualRateInBps, int minimumFinancingTermInDays) {
+
+        public long financingRateInBps(long financingTermInDays) {
+            return annualRateInBps * financingTermInDays / DAYS_IN_YEAR;
+        }
+    }
+}
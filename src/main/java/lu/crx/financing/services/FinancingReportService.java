@@ -0,0 +1,71 @@
+package lu.crx.financing.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.FinancingRateRollup;
+import lu.crx.financing.repository.DailyVolumeView;
+import lu.crx.financing.repository.FinancingRateRollupRepository;
+import lu.crx.financing.repository.FinancingRollupRepository;
+import lu.crx.financing.repository.TermBucketRateView;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Aggregate reporting over the financing rollups. The rollups hold one row per financing date, purchaser,
+ * creditor and term bucket (or rate), so the cost of a report depends on the reported date range only,
+ * not on the number of financing agreements.
+ * Rollups are maintained by the financing runs since their introduction, the agreements financed before
+ * are reported after a one-off {@link #rebuildRollups(LocalDate, LocalDate)} of their financing dates.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+public class FinancingReportService {
+
+    private final FinancingRollupRepository financingRollupRepository;
+    private final FinancingRateRollupRepository financingRateRollupRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Volume financed per purchaser per creditor per day, between the given financing dates inclusive.
+     */
+    public List<DailyVolumeView> dailyVolumes(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return financingRollupRepository.findDailyVolumes(from, to);
+    }
+
+    /**
+     * Average financing rate by financing term bucket, between the given financing dates inclusive.
+     */
+    public List<TermBucketRateView> averageRatesByTermBucket(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return financingRollupRepository.findAverageRatesByTermBucket(from, to);
+    }
+
+    /**
+     * Number of invoices financed per financing rate by the purchaser for the creditor on the financing date.
+     */
+    public List<FinancingRateRollup> rateHistogram(LocalDate financingDate, long purchaserId, long creditorId) {
+        return financingRateRollupRepository.findRateHistogram(financingDate, purchaserId, creditorId);
+    }
+
+    /**
+     * Rebuilds the rollups of the financing dates from the financing agreements in one transaction,
+     * e.g. to backfill the dates financed before the rollups were introduced. Repeated rebuilds give the same rollups.
+     * Must not run concurrently with the financing of these dates, whose increments could be lost.
+     */
+    public void rebuildRollups(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        transactionTemplate.executeWithoutResult(status -> financingRollupRepository.rebuildRollups(from, to));
+        log.info("Rebuilt financing rollups from {} to {}", from, to);
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Report range start " + from + " is after its end " + to);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.metrics.FinancingRunMetrics;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * State pinned once per financing run.
+ * All invoices of a run are financed at the same financing date, even if the run crosses midnight.
+ * The metrics collect the instrumentation of the run.
+ */
+public record FinancingRunContext(LocalDate financingDate, long financingEpochDay, FinancingRunMetrics metrics) {
+
+    public static FinancingRunContext of(Clock clock) {
+        return of(clock, new FinancingRunMetrics());
+    }
+
+    /**
+     * Context of a run collecting into the given metrics, e.g. of a worker which finances many small runs.
+     */
+    public static FinancingRunContext of(Clock clock, FinancingRunMetrics metrics) {
+        LocalDate financingDate = LocalDate.now(clock);
+        return new FinancingRunContext(financingDate, financingDate.toEpochDay(), metrics);
+    }
+
+    /**
+     * Calculates financing terms for the batch of invoices as plain epoch day subtraction,
+     * result at index i is the financing term of invoice at index i.
+     */
+    public long[] financingTermsInDays(List<Invoice> invoices) {
+        int size = invoices.size();
+        long[] maturityEpochDays = new long[size];
+        for (int i = 0; i < size; i++) {
+            maturityEpochDays[i] = invoices.get(i).getMaturityDate().toEpochDay();
+        }
+        return financingTermsInDays(maturityEpochDays);
+    }
+
+    public long[] financingTermsInDays(long[] maturityEpochDays) {
+        long[] terms = new long[maturityEpochDays.length];
+        for (int i = 0; i < maturityEpochDays.length; i++) {
+            terms[i] = maturityEpochDays[i] - financingEpochDay;
+        }
+        return terms;
+    }
+
+    public long financingTermInDays(long maturityEpochDay) {
+        return maturityEpochDay - financingEpochDay;
+    }
+}
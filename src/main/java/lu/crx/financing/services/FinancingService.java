@@ -1,21 +1,28 @@
 package lu.crx.financing.services;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.configuration.BacklogProperties;
 import lu.crx.financing.entities.*;
+import lu.crx.financing.metrics.FinancingPhase;
+import lu.crx.financing.metrics.FinancingRunMetrics;
 import lu.crx.financing.repository.FinancingAgreementRepository;
+import lu.crx.financing.repository.FinancingRollupRepository;
+import lu.crx.financing.repository.InvoiceBacklogRepository;
+import lu.crx.financing.repository.InvoiceBatchRepository;
 import lu.crx.financing.repository.InvoiceRepository;
 import lu.crx.financing.repository.PurchaserRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Clock;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -24,109 +31,250 @@ import java.util.stream.Collectors;
 @Service
 public class FinancingService {
 
-    private static final int DAYS_IN_YEAR = 360;
     private final InvoiceRepository invoiceRepository;
     private final PurchaserRepository purchaserRepository;
     private final FinancingAgreementRepository financingAgreementRepository;
+    private final Clock clock;
+    private final BacklogProperties backlogProperties;
+    private final InvoiceBacklogRepository invoiceBacklogRepository;
+    private final PurchaserOfferBook purchaserOfferBook;
+    private final FinancingRollupRepository financingRollupRepository;
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
     public void finance() {
-        log.info("Financing started");
+        FinancingRunContext runContext = FinancingRunContext.of(clock);
+        log.info("Financing started, financing date: {}", runContext.financingDate());
 
-        List<Invoice> unfinancedInvoices = invoiceRepository.findAllByFinanced(false);
+        if (backlogProperties.storage() == BacklogProperties.Storage.HEAP) {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Invoice> unfinancedInvoices;
+                try (FinancingRunMetrics.Measurement measurement = runContext.metrics().measure(FinancingPhase.LOAD_INVOICES)) {
+                    unfinancedInvoices = invoiceRepository.findAllByFinanced(false);
+                }
+                finance(runContext, unfinancedInvoices);
+            });
+        } else {
+            financeOffHeap(runContext);
+        }
+
+        log.info("Financing completed, run report: {}", runContext.metrics().report());
+    }
+
+    /**
+     * Finances given unfinanced invoices at the financing date of the run context.
+     * Has to be called within a transaction.
+     *
+     * @return number of financed invoices
+     */
+    public int finance(FinancingRunContext runContext, List<Invoice> unfinancedInvoices) {
         Set<Long> unfinancedCreditorsId = unfinancedInvoices.stream()
                 .map(invoice -> invoice.getCreditor().getId())
                 .collect(Collectors.toSet());
 
-        /*
-        Fetching all data at once to avoid multiple DB operations,
-        depends on application profiling if there will be issue with RAM or performance it can be better to process it in some batch
-        */
-        List<Purchaser> purchasersForInvoicesCreditor = purchaserRepository.findPurchasersByCreditorsId(unfinancedCreditorsId);
-
-        List<FinancingCalculationResult> financingCalculationResults = unfinancedInvoices.stream()
-                .map(invoice -> processInvoice(invoice, purchasersForInvoicesCreditor))
-                .filter(fcr -> fcr.invoiceId != 0L)
-                .toList();
-
-        log.info("Found financing for {} invoices", financingCalculationResults.size());
-
-        financingCalculationResults
-                .forEach(fcr -> invoiceRepository.updateInvoice(fcr.invoiceId(), true, fcr.earlyPaymentAmountInCents(), fcr.discountAmount()));
-
-
-        List<FinancingAgreement> financingAgreements = financingCalculationResults.stream()
-                .map(fcr -> FinancingAgreement.builder()
-                        .invoice(unfinancedInvoices.stream()
-                                .filter(invoice -> invoice.getId() == fcr.invoiceId)
-                                .findFirst()
-                                .get())
-                        .purchaser(purchasersForInvoicesCreditor.stream()
-                                .filter(purchaser -> purchaser.getId() == fcr.purchaserId)
-                                .findFirst()
-                                .get())
-                        .build())
-                .toList();
+        Map<Long, CreditorOfferBook> offerBooks;
+        try (FinancingRunMetrics.Measurement measurement = runContext.metrics().measure(FinancingPhase.LOAD_PURCHASERS)) {
+            offerBooks = purchaserOfferBook.books(unfinancedCreditorsId);
+        }
+
+        // computed and saved in chunks, so that every chunk is one sample of the COMPUTE and WRITE latencies
+        int financedInvoices = 0;
+        int chunkSize = backlogProperties.chunkSize();
+        RollupDeltas rollupDeltas = new RollupDeltas();
+        for (int from = 0; from < unfinancedInvoices.size(); from += chunkSize) {
+            List<Invoice> chunk = unfinancedInvoices.subList(from, Math.min(from + chunkSize, unfinancedInvoices.size()));
+            List<FinancingCalculationResult> financingCalculationResults = new ArrayList<>(chunk.size());
+            try (FinancingRunMetrics.Measurement measurement = runContext.metrics().measure(FinancingPhase.COMPUTE)) {
+                long[] financingTermsInDays = runContext.financingTermsInDays(chunk);
+                for (int i = 0; i < chunk.size(); i++) {
+                    Invoice invoice = chunk.get(i);
+                    FinancingCalculationResult fcr = processInvoice(invoice.getId(), invoice.getCreditor().getId(),
+                            invoice.getValueInCents(), financingTermsInDays[i], runContext, offerBooks);
+                    if (fcr.invoiceId != 0L) {
+                        financingCalculationResults.add(fcr);
+                    }
+                }
+            }
+            boolean lastChunk = from + chunkSize >= unfinancedInvoices.size();
+            financedInvoices += saveFinancingResults(runContext, financingCalculationResults, rollupDeltas, lastChunk);
+        }
+
+        log.info("Found financing for {} invoices", financedInvoices);
+
+        runContext.metrics().addInvoices(unfinancedInvoices.size(), financedInvoices);
+        return financedInvoices;
+    }
+
+    /**
+     * Finances unfinanced invoices streamed into the off-heap backlog, the results are saved in chunks,
+     * each committed in its own transaction, so that neither the backlog, the results nor the persistence context
+     * of the saved agreements have to be held on the heap.
+     */
+    private void financeOffHeap(FinancingRunContext runContext) {
+        try (OffHeapInvoiceBacklog backlog = createBacklog()) {
+            FinancingRunMetrics metrics = runContext.metrics();
+            try (FinancingRunMetrics.Measurement measurement = metrics.measure(FinancingPhase.LOAD_INVOICES)) {
+                invoiceBacklogRepository.loadUnfinancedInvoices(backlog::add, backlogProperties.fetchSize());
+            }
+            log.info("Loaded {} unfinanced invoices into {} backlog", backlog.size(), backlogProperties.storage());
+
+            Map<Long, CreditorOfferBook> offerBooks;
+            try (FinancingRunMetrics.Measurement measurement = metrics.measure(FinancingPhase.LOAD_PURCHASERS)) {
+                offerBooks = purchaserOfferBook.books(backlog.creditorIds());
+            }
+
+            int financedInvoices = 0;
+            List<FinancingCalculationResult> financingCalculationResults = new ArrayList<>(backlogProperties.chunkSize());
+            FinancingRunMetrics.Measurement computeMeasurement = metrics.measure(FinancingPhase.COMPUTE);
+            for (int i = 0; i < backlog.size(); i++) {
+                long daysForFinancing = runContext.financingTermInDays(backlog.maturityEpochDay(i));
+                FinancingCalculationResult fcr = processInvoice(backlog.invoiceId(i), backlog.creditorId(i),
+                        backlog.valueInCents(i), daysForFinancing, runContext, offerBooks);
+                if (fcr.invoiceId != 0L) {
+                    financingCalculationResults.add(fcr);
+                }
+                if (financingCalculationResults.size() == backlogProperties.chunkSize()) {
+                    computeMeasurement.close();
+                    financedInvoices += saveFinancingResultsInTransaction(runContext, financingCalculationResults);
+                    financingCalculationResults.clear();
+                    computeMeasurement = metrics.measure(FinancingPhase.COMPUTE);
+                }
+            }
+            computeMeasurement.close();
+            financedInvoices += saveFinancingResultsInTransaction(runContext, financingCalculationResults);
+            metrics.addInvoices(backlog.size(), financedInvoices);
+
+            log.info("Found financing for {} invoices", financedInvoices);
+        }
+    }
+
+    private OffHeapInvoiceBacklog createBacklog() {
+        return switch (backlogProperties.storage()) {
+            case DIRECT -> OffHeapInvoiceBacklog.allocateDirect();
+            case MAPPED -> OffHeapInvoiceBacklog.mapped(backlogProperties.scratchDir());
+            case HEAP -> throw new IllegalStateException("Heap backlog is not stored off-heap");
+        };
+    }
+
+    private int saveFinancingResultsInTransaction(FinancingRunContext runContext,
+                                                  List<FinancingCalculationResult> financingCalculationResults) {
+        return transactionTemplate.execute(status ->
+                saveFinancingResults(runContext, financingCalculationResults, new RollupDeltas(), true));
+    }
+
+    /**
+     * @param rollupDeltas      rollup deltas of the saved results collected over the whole transaction
+     * @param lastInTransaction whether these are the last results saved in the transaction, the rollups are then
+     *                          incremented by the collected deltas
+     */
+    private int saveFinancingResults(FinancingRunContext runContext, List<FinancingCalculationResult> financingCalculationResults,
+                                     RollupDeltas rollupDeltas, boolean lastInTransaction) {
+        try (FinancingRunMetrics.Measurement measurement = runContext.metrics().measure(FinancingPhase.WRITE)) {
+            int savedFinancingResults = saveFinancingResults(financingCalculationResults, rollupDeltas);
+            if (lastInTransaction) {
+                // rollups are incremented once per transaction, right before its end, so that they always match
+                // the saved agreements and the locks of the rollups are held only until the commit
+                financingRollupRepository.incrementRollups(rollupDeltas.rollups.values());
+                financingRollupRepository.incrementRateRollups(rollupDeltas.rateRollups.values());
+            }
+            return savedFinancingResults;
+        }
+    }
+
+    private int saveFinancingResults(List<FinancingCalculationResult> financingCalculationResults, RollupDeltas rollupDeltas) {
+        boolean[] updated = invoiceRepository.updateFinancedInvoices(financingCalculationResults.stream()
+                .map(fcr -> new InvoiceBatchRepository.FinancedInvoice(fcr.invoiceId(), fcr.earlyPaymentAmountInCents(), fcr.discountAmount()))
+                .toList());
+
+        List<FinancingAgreement> financingAgreements = new ArrayList<>(financingCalculationResults.size());
+        for (int i = 0; i < financingCalculationResults.size(); i++) {
+            FinancingCalculationResult fcr = financingCalculationResults.get(i);
+            if (!updated[i]) {
+                log.warn("Invoice_id: {} has been already financed concurrently, skipping", fcr.invoiceId());
+                continue;
+            }
+            financingAgreements.add(FinancingAgreement.builder()
+                    .invoice(invoiceRepository.getReferenceById(fcr.invoiceId()))
+                    .purchaser(purchaserRepository.getReferenceById(fcr.purchaserId()))
+                    .financingDate(fcr.financingDate())
+                    .financingTermInDays(fcr.financingTermInDays())
+                    .financingRateInBps(fcr.financingRateInBps())
+                    .build());
+            rollupDeltas.add(fcr);
+        }
         List<FinancingAgreement> savedFinancingAgreements = financingAgreementRepository.saveAll(financingAgreements);
         log.info("Saved {} financingAgreement", savedFinancingAgreements.size());
 
-        log.info("Financing completed");
+        return savedFinancingAgreements.size();
+    }
+
+    private FinancingCalculationResult processInvoice(long invoiceId, long creditorId, long valueInCents,
+                                                      long daysForFinancing, FinancingRunContext runContext,
+                                                      Map<Long, CreditorOfferBook> offerBooks) {
+        if (!runContext.metrics().sampleInvoiceCompute()) {
+            return processInvoice(invoiceId, creditorId, valueInCents, daysForFinancing, runContext.financingDate(),
+                    offerBooks.get(creditorId));
+        }
+        long startedAtNanos = System.nanoTime();
+        try {
+            return processInvoice(invoiceId, creditorId, valueInCents, daysForFinancing, runContext.financingDate(),
+                    offerBooks.get(creditorId));
+        } finally {
+            runContext.metrics().recordInvoiceCompute(System.nanoTime() - startedAtNanos);
+        }
     }
 
-    private FinancingCalculationResult processInvoice(Invoice invoice, List<Purchaser> purchasers) {
-        log.info("Processing Invoice: {}", invoice.getId());
-        Creditor creditor = invoice.getCreditor();
-        long daysForFinancing = ChronoUnit.DAYS.between(LocalDate.now(), invoice.getMaturityDate());
-
-        List<PurchaserFinancingSettings> pfsForGivenInvoice = purchasers.stream()
-                .filter(purchaser -> purchaser.getMinimumFinancingTermInDays() < daysForFinancing)
-                .flatMap(purchaser -> purchaser.getPurchaserFinancingSettings().stream())
-                .filter(pfs -> pfs.getCreditor().getId() == creditor.getId())
-                .filter(pfs -> isFinancingRateAllowed(pfs, daysForFinancing))
-                .toList();
-
-        Optional<PurchaserFinancingSettings> bestPurchaserFinancingSettings = pfsForGivenInvoice.stream()
-                .min(Comparator.comparing(PurchaserFinancingSettings::getAnnualRateInBps));
-
-        if (bestPurchaserFinancingSettings.isPresent()) {
-            PurchaserFinancingSettings bpfs = bestPurchaserFinancingSettings.get();
-            long pfsId = bpfs.getId();
-            long purchaserId = purchasers.stream()
-                    .filter(p -> containPurchaserFinancingSettings(p, pfsId))
-                    .findFirst()
-                    .get()
-                    .getId();
-            long discountAmount = BigDecimal.valueOf(invoice.getValueInCents())
-                    .multiply(BigDecimal.valueOf(calculateFinancingRate(bpfs, daysForFinancing)))
+    private FinancingCalculationResult processInvoice(long invoiceId, long creditorId, long valueInCents,
+                                                      long daysForFinancing, LocalDate financingDate,
+                                                      CreditorOfferBook offerBook) {
+        if (log.isDebugEnabled()) {
+            log.debug("Processing Invoice: {}", invoiceId);
+        }
+
+        CreditorOfferBook.Offer bestOffer = offerBook == null ? null : offerBook.selectBestOffer(daysForFinancing);
+
+        if (bestOffer != null) {
+            long financingRate = bestOffer.financingRateInBps(daysForFinancing);
+            long discountAmount = BigDecimal.valueOf(valueInCents)
+                    .multiply(BigDecimal.valueOf(financingRate))
                     .divide(BigDecimal.valueOf(10_000L), 10, RoundingMode.HALF_UP)
                     .longValue();
-            long earlyPaymentAmountInCents = invoice.getValueInCents() - discountAmount;
-            return new FinancingCalculationResult(invoice.getId(), discountAmount, earlyPaymentAmountInCents, purchaserId);
+            long earlyPaymentAmountInCents = valueInCents - discountAmount;
+            return new FinancingCalculationResult(invoiceId, discountAmount, earlyPaymentAmountInCents, bestOffer.purchaserId(),
+                    creditorId, financingDate, daysForFinancing, financingRate);
         } else {
-            log.warn("Couldn't find purchaser financing settings for invoice_id: {} ", invoice.getId());
-            return new FinancingCalculationResult(0L, 0L, 0L, 0L);
+            log.warn("Couldn't find purchaser financing settings for invoice_id: {} ", invoiceId);
+            return new FinancingCalculationResult(0L, 0L, 0L, 0L, 0L, financingDate, 0L, 0L);
         }
     }
 
-    private boolean containPurchaserFinancingSettings(Purchaser purchaser, long pfsId) {
-        return purchaser.getPurchaserFinancingSettings().stream()
-                .anyMatch(pfs -> pfs.getId() == pfsId);
+    private record FinancingCalculationResult(long invoiceId, long discountAmount, long earlyPaymentAmountInCents,
+                                              long purchaserId, long creditorId, LocalDate financingDate,
+                                              long financingTermInDays, long financingRateInBps) {
     }
 
-    private boolean isFinancingRateAllowed(PurchaserFinancingSettings pfs, long daysForFinancing) {
-        return calculateFinancingRate(pfs, daysForFinancing) <= pfs.getCreditor().getMaxFinancingRateInBps();
-    }
+    /**
+     * Rollup deltas of the financing results saved in one transaction.
+     */
+    private static final class RollupDeltas {
 
-    private long calculateFinancingRate(PurchaserFinancingSettings pfs, long daysForFinancing) {
-        BigDecimal annualRate = BigDecimal.valueOf(pfs.getAnnualRateInBps());
-        BigDecimal financingDays = BigDecimal.valueOf(daysForFinancing);
-        return annualRate
-                .multiply(financingDays)
-                .divide(BigDecimal.valueOf(DAYS_IN_YEAR), 10, RoundingMode.HALF_UP)
-                .longValue();
-    }
+        private final Map<FinancingRollupKey, FinancingRollup> rollups = new HashMap<>();
+        private final Map<FinancingRateRollupKey, FinancingRateRollup> rateRollups = new HashMap<>();
 
-    private record FinancingCalculationResult(long invoiceId, long discountAmount, long earlyPaymentAmountInCents,
-                                              long purchaserId) {
+        void add(FinancingCalculationResult fcr) {
+            FinancingRollupKey rollupKey = new FinancingRollupKey(fcr.financingDate(), fcr.purchaserId(), fcr.creditorId(),
+                    FinancingRollup.termBucketInDays(fcr.financingTermInDays()));
+            FinancingRollup rollup = rollups.computeIfAbsent(rollupKey, key -> FinancingRollup.builder().key(key).build());
+            rollup.setInvoiceCount(rollup.getInvoiceCount() + 1);
+            rollup.setValueInCents(rollup.getValueInCents() + fcr.discountAmount() + fcr.earlyPaymentAmountInCents());
+            rollup.setDiscountedAmountInCents(rollup.getDiscountedAmountInCents() + fcr.discountAmount());
+            rollup.setEarlyPaymentAmountInCents(rollup.getEarlyPaymentAmountInCents() + fcr.earlyPaymentAmountInCents());
+            rollup.setFinancingRateSumInBps(rollup.getFinancingRateSumInBps() + fcr.financingRateInBps());
+
+            FinancingRateRollupKey rateRollupKey = new FinancingRateRollupKey(fcr.financingDate(), fcr.purchaserId(),
+                    fcr.creditorId(), fcr.financingRateInBps());
+            FinancingRateRollup rateRollup = rateRollups.computeIfAbsent(rateRollupKey,
+                    key -> FinancingRateRollup.builder().key(key).build());
+            rateRollup.setInvoiceCount(rateRollup.getInvoiceCount() + 1);
+        }
     }
 }
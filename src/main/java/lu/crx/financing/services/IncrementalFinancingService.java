@@ -0,0 +1,164 @@
+package lu.crx.financing.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.configuration.IncrementalFinancingProperties;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceCreatedEvent;
+import lu.crx.financing.metrics.FinancingRunMetrics;
+import lu.crx.financing.metrics.LatencyHistogram;
+import lu.crx.financing.repository.InvoiceRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finances invoices right after their creation, instead of waiting for the next {@link FinancingService#finance()} sweep.
+ * Created invoices are queued to a bounded pool of workers, each worker collects invoices for
+ * {@link IncrementalFinancingProperties#batchWindow()} and finances them in one transaction.
+ * Invoices which don't fit into the queue or fail to be financed are left for the sweep.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "financing.incremental", name = "enabled", havingValue = "true")
+public class IncrementalFinancingService {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static final long DROPPED_INVOICES_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final FinancingService financingService;
+    private final InvoiceRepository invoiceRepository;
+    private final IncrementalFinancingProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+
+    /**
+     * Latency between the commit of the invoice and the commit of its financing (or of the attempt to finance it).
+     */
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    /**
+     * Invoices left for the sweep because the queue was full, since the last report of them.
+     */
+    private final AtomicLong droppedInvoices = new AtomicLong();
+    private final AtomicLong droppedInvoicesReportedAtNanos = new AtomicLong(System.nanoTime());
+    private BlockingQueue<QueuedInvoice> queue;
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(properties.queueCapacity());
+        workers = Executors.newFixedThreadPool(properties.workers(),
+                Thread.ofPlatform().name("incremental-financing-", 0).daemon().factory());
+        running = true;
+        for (int i = 0; i < properties.workers(); i++) {
+            workers.execute(this::financeQueuedInvoices);
+        }
+        log.info("Incremental financing started with {} workers", properties.workers());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        log.info("Incremental financing stopped, {} queued and {} dropped invoices left for the sweep",
+                queue.size(), droppedInvoices.getAndSet(0));
+    }
+
+    @TransactionalEventListener
+    public void invoiceCreated(InvoiceCreatedEvent event) {
+        if (!queue.offer(new QueuedInvoice(event.invoiceId(), System.nanoTime()))) {
+            droppedInvoices.incrementAndGet();
+            reportDroppedInvoices();
+        }
+    }
+
+    public LatencyHistogram latencyHistogram() {
+        return latencyHistogram;
+    }
+
+    private void financeQueuedInvoices() {
+        // metrics of all batches of the worker, instead of a new instance per batch of a few milliseconds
+        FinancingRunMetrics metrics = new FinancingRunMetrics();
+        while (running) {
+            try {
+                List<QueuedInvoice> batch = takeBatch();
+                if (!batch.isEmpty()) {
+                    financeBatch(batch, metrics);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Incremental financing of batch failed, invoices left for the sweep", e);
+            }
+        }
+    }
+
+    private List<QueuedInvoice> takeBatch() throws InterruptedException {
+        List<QueuedInvoice> batch = new ArrayList<>();
+        QueuedInvoice first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + properties.batchWindow().toNanos();
+        while (batch.size() < properties.batchSize()) {
+            QueuedInvoice next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void financeBatch(List<QueuedInvoice> batch, FinancingRunMetrics metrics) {
+        FinancingRunContext runContext = FinancingRunContext.of(clock, metrics);
+        int financedInvoices = transactionTemplate.execute(status -> {
+            List<Invoice> unfinancedInvoices = invoiceRepository.findAllByIdInAndFinanced(
+                    batch.stream().map(QueuedInvoice::invoiceId).toList(), false);
+            return financingService.finance(runContext, unfinancedInvoices);
+        });
+
+        long financedAt = System.nanoTime();
+        batch.forEach(queuedInvoice -> latencyHistogram.record(financedAt - queuedInvoice.queuedAtNanos()));
+        if (log.isDebugEnabled()) {
+            log.debug("Incrementally financed {} of {} invoices, worker report: {}", financedInvoices, batch.size(),
+                    metrics.report());
+        }
+    }
+
+    /**
+     * Logs the count of dropped invoices at most once per {@link #DROPPED_INVOICES_REPORT_INTERVAL_NANOS},
+     * so that a burst of invoices doesn't flood the log with a warning per invoice.
+     */
+    private void reportDroppedInvoices() {
+        long now = System.nanoTime();
+        long reportedAt = droppedInvoicesReportedAtNanos.get();
+        if (now - reportedAt >= DROPPED_INVOICES_REPORT_INTERVAL_NANOS
+                && droppedInvoicesReportedAtNanos.compareAndSet(reportedAt, now)) {
+            log.warn("Incremental financing queue is full, {} invoices left for the sweep in the last {} s",
+                    droppedInvoices.getAndSet(0), TimeUnit.NANOSECONDS.toSeconds(now - reportedAt));
+        }
+    }
+
+    private record QueuedInvoice(long invoiceId, long queuedAtNanos) {
+    }
+}
@@ -0,0 +1,134 @@
+package lu.crx.financing.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Backlog of unfinanced invoices stored outside the java heap as fixed-width records
+ * (invoice id, creditor id, maturity epoch day, value in cents), accessed by index.
+ * Records are stored in segments, either direct byte buffers or memory-mapped scratch files.
+ * Not thread safe for writing.
+ */
+public class OffHeapInvoiceBacklog implements AutoCloseable {
+
+    static final int RECORD_SIZE = 4 * Long.BYTES;
+    private static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 21;
+    private static final int INVOICE_ID_OFFSET = 0;
+    private static final int CREDITOR_ID_OFFSET = Long.BYTES;
+    private static final int MATURITY_EPOCH_DAY_OFFSET = 2 * Long.BYTES;
+    private static final int VALUE_IN_CENTS_OFFSET = 3 * Long.BYTES;
+
+    private final int recordsPerSegment;
+    private final Path scratchDir;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final List<Path> scratchFiles = new ArrayList<>();
+    private final Set<Long> creditorIds = new HashSet<>();
+    private int size;
+
+    OffHeapInvoiceBacklog(int recordsPerSegment, Path scratchDir) {
+        this.recordsPerSegment = recordsPerSegment;
+        this.scratchDir = scratchDir;
+    }
+
+    public static OffHeapInvoiceBacklog allocateDirect() {
+        return new OffHeapInvoiceBacklog(DEFAULT_RECORDS_PER_SEGMENT, null);
+    }
+
+    public static OffHeapInvoiceBacklog mapped(Path scratchDir) {
+        return new OffHeapInvoiceBacklog(DEFAULT_RECORDS_PER_SEGMENT, scratchDir);
+    }
+
+    public void add(long invoiceId, long creditorId, long maturityEpochDay, long valueInCents) {
+        if (size == segments.size() * recordsPerSegment) {
+            segments.add(allocateSegment());
+        }
+        ByteBuffer segment = segments.get(size / recordsPerSegment);
+        int offset = (size % recordsPerSegment) * RECORD_SIZE;
+        segment.putLong(offset + INVOICE_ID_OFFSET, invoiceId);
+        segment.putLong(offset + CREDITOR_ID_OFFSET, creditorId);
+        segment.putLong(offset + MATURITY_EPOCH_DAY_OFFSET, maturityEpochDay);
+        segment.putLong(offset + VALUE_IN_CENTS_OFFSET, valueInCents);
+        creditorIds.add(creditorId);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Distinct creditors of the invoices in the backlog.
+     */
+    public Set<Long> creditorIds() {
+        return creditorIds;
+    }
+
+    public long invoiceId(int index) {
+        return get(index, INVOICE_ID_OFFSET);
+    }
+
+    public long creditorId(int index) {
+        return get(index, CREDITOR_ID_OFFSET);
+    }
+
+    public long maturityEpochDay(int index) {
+        return get(index, MATURITY_EPOCH_DAY_OFFSET);
+    }
+
+    public long valueInCents(int index) {
+        return get(index, VALUE_IN_CENTS_OFFSET);
+    }
+
+    private long get(int index, int fieldOffset) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return segments.get(index / recordsPerSegment)
+                .getLong((index % recordsPerSegment) * RECORD_SIZE + fieldOffset);
+    }
+
+    private ByteBuffer allocateSegment() {
+        int segmentSize = recordsPerSegment * RECORD_SIZE;
+        if (scratchDir == null) {
+            return ByteBuffer.allocateDirect(segmentSize).order(ByteOrder.nativeOrder());
+        }
+        try {
+            Path scratchFile = Files.createTempFile(scratchDir, "invoice-backlog-", ".bin");
+            scratchFiles.add(scratchFile);
+            try (FileChannel channel = FileChannel.open(scratchFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize).order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't map backlog scratch file in " + scratchDir, e);
+        }
+    }
+
+    /**
+     * Releases the segments and deletes the scratch files.
+     * The memory itself is freed when the segments are garbage collected.
+     */
+    @Override
+    public void close() {
+        segments.clear();
+        creditorIds.clear();
+        size = 0;
+        for (Path scratchFile : scratchFiles) {
+            try {
+                Files.deleteIfExists(scratchFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't delete backlog scratch file " + scratchFile, e);
+            }
+        }
+        scratchFiles.clear();
+    }
+}
@@ -0,0 +1,128 @@
+package lu.crx.financing.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.configuration.OfferBookProperties;
+import lu.crx.financing.entities.FinancingSettingsChangedEvent;
+import lu.crx.financing.repository.PurchaserOfferView;
+import lu.crx.financing.repository.PurchaserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Per-creditor {@link CreditorOfferBook}s kept in memory across financing runs.
+ * Books are loaded on the first use and updated incrementally on committed changes of the financing settings,
+ * purchasers and creditors, so they don't have to be rebuilt for every run.
+ * A change committed while books are being loaded may be missed by the loaded books, these books are then
+ * used by the loading run only and not cached. Changes made by other application instances are picked up
+ * after {@link OfferBookProperties#maxAge()}, if it is set.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+public class PurchaserOfferBook {
+
+    private final PurchaserRepository purchaserRepository;
+    private final OfferBookProperties properties;
+    private final Map<Long, CreditorOfferBook> books = new ConcurrentHashMap<>();
+    private final Object changeLock = new Object();
+
+    /**
+     * Number of the applied changes, guarded by {@link #changeLock}.
+     */
+    private long changes;
+
+    /**
+     * Returns offer books of the creditors, loading the missing and outdated ones in one query.
+     */
+    public Map<Long, CreditorOfferBook> books(Set<Long> creditorIds) {
+        long now = System.nanoTime();
+        Duration maxAge = properties.maxAge();
+        Map<Long, CreditorOfferBook> creditorBooks = new HashMap<>();
+        Set<Long> missingCreditorIds = creditorIds.stream()
+                .filter(creditorId -> {
+                    CreditorOfferBook book = books.get(creditorId);
+                    if (book == null || maxAge != null && now - book.loadedAtNanos() >= maxAge.toNanos()) {
+                        return true;
+                    }
+                    creditorBooks.put(creditorId, book);
+                    return false;
+                })
+                .collect(Collectors.toSet());
+
+        if (!missingCreditorIds.isEmpty()) {
+            long changesBeforeLoad = changes();
+            Map<Long, List<PurchaserOfferView>> offersByCreditor = purchaserRepository.findOffersByCreditorsId(missingCreditorIds)
+                    .stream()
+                    .collect(Collectors.groupingBy(PurchaserOfferView::getCreditorId));
+            Map<Long, CreditorOfferBook> loadedBooks = new HashMap<>();
+            missingCreditorIds.forEach(creditorId -> loadedBooks.put(creditorId,
+                    createBook(creditorId, offersByCreditor.getOrDefault(creditorId, List.of()), now)));
+            creditorBooks.putAll(loadedBooks);
+
+            synchronized (changeLock) {
+                if (changes == changesBeforeLoad) {
+                    books.putAll(loadedBooks);
+                } else {
+                    log.info("Financing settings changed while loading offer books, books are not cached");
+                }
+            }
+            log.info("Loaded offer books of {} creditors", missingCreditorIds.size());
+        }
+        return creditorBooks;
+    }
+
+    @TransactionalEventListener
+    public void financingSettingsChanged(FinancingSettingsChangedEvent event) {
+        synchronized (changeLock) {
+            changes++;
+            applyChange(event);
+        }
+        log.debug("Offer books updated on {}", event);
+    }
+
+    private long changes() {
+        synchronized (changeLock) {
+            return changes;
+        }
+    }
+
+    private void applyChange(FinancingSettingsChangedEvent event) {
+        switch (event) {
+            case FinancingSettingsChangedEvent.SettingsCreated created -> books.remove(created.creditorId());
+            case FinancingSettingsChangedEvent.SettingsUpdated updated -> books.computeIfPresent(updated.creditorId(),
+                    (creditorId, book) -> book.withAnnualRate(updated.settingsId(), updated.annualRateInBps()));
+            case FinancingSettingsChangedEvent.SettingsRemoved removed -> books.computeIfPresent(removed.creditorId(),
+                    (creditorId, book) -> book.withoutSettings(removed.settingsId()));
+            case FinancingSettingsChangedEvent.PurchaserUpdated updated -> updateAll(
+                    book -> book.withMinimumFinancingTerm(updated.purchaserId(), updated.minimumFinancingTermInDays()));
+            case FinancingSettingsChangedEvent.PurchaserRemoved removed -> updateAll(
+                    book -> book.withoutPurchaser(removed.purchaserId()));
+            case FinancingSettingsChangedEvent.CreditorUpdated updated -> books.computeIfPresent(updated.creditorId(),
+                    (creditorId, book) -> book.withMaxFinancingRate(updated.maxFinancingRateInBps()));
+        }
+    }
+
+    private void updateAll(UnaryOperator<CreditorOfferBook> update) {
+        books.replaceAll((creditorId, book) -> update.apply(book));
+    }
+
+    private CreditorOfferBook createBook(long creditorId, List<PurchaserOfferView> offers, long loadedAtNanos) {
+        int maxFinancingRateInBps = offers.isEmpty() ? 0 : offers.get(0).getMaxFinancingRateInBps();
+        return CreditorOfferBook.of(creditorId, maxFinancingRateInBps,
+                offers.stream()
+                        .map(offer -> new CreditorOfferBook.Offer(offer.getSettingsId(), offer.getPurchaserId(),
+                                offer.getAnnualRateInBps(), offer.getMinimumFinancingTermInDays()))
+                        .toList(),
+                loadedAtNanos);
+    }
+}
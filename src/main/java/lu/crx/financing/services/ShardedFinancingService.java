@@ -0,0 +1,127 @@
+package lu.crx.financing.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.configuration.ShardingProperties;
+import lu.crx.financing.entities.FinancingLease;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.repository.CreditorRepository;
+import lu.crx.financing.repository.FinancingLeaseRepository;
+import lu.crx.financing.repository.InvoiceRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-worker mode of financing: any number of workers, in one or many application instances sharing the database,
+ * can run concurrently. Invoices are split into creditor shards and every shard is financed only by the worker
+ * holding its {@link FinancingLease}.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+public class ShardedFinancingService {
+
+    private final FinancingService financingService;
+    private final FinancingLeaseRepository financingLeaseRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final CreditorRepository creditorRepository;
+    private final ShardingProperties shardingProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+
+    /**
+     * Claims and finances creditor shards one by one, until there is no shard left to finance in this sweep.
+     *
+     * @param workerId unique id of the worker
+     * @return numbers of shards and invoices financed by this worker
+     */
+    public ShardedFinancingResult finance(String workerId) {
+        Instant sweepStartedAt = clock.instant();
+        FinancingRunContext runContext = FinancingRunContext.of(clock);
+        log.info("Worker {} started financing, financing date: {}", workerId, runContext.financingDate());
+
+        createMissingLeases();
+
+        int financedInvoices = 0;
+        int financedShards = 0;
+        Optional<Integer> shardId;
+        while ((shardId = claimShard(workerId, sweepStartedAt)).isPresent()) {
+            financedInvoices += financeShard(workerId, shardId.get(), runContext);
+            financedShards++;
+        }
+
+        log.info("Worker {} completed financing, financed {} invoices in {} shards, run report: {}",
+                workerId, financedInvoices, financedShards, runContext.metrics().report());
+        return new ShardedFinancingResult(financedShards, financedInvoices);
+    }
+
+    private Optional<Integer> claimShard(String workerId, Instant sweepStartedAt) {
+        return transactionTemplate.execute(status -> {
+            Instant now = clock.instant();
+            return financingLeaseRepository.lockClaimableShard(now, sweepStartedAt)
+                    .map(lease -> {
+                        if (lease.getOwnerId() != null) {
+                            log.warn("Worker {} reclaims expired lease of shard {} from worker {}",
+                                    workerId, lease.getShardId(), lease.getOwnerId());
+                        }
+                        lease.setOwnerId(workerId);
+                        lease.setLeaseExpiresAt(now.plus(shardingProperties.leaseDuration()));
+                        return lease.getShardId();
+                    });
+        });
+    }
+
+    /**
+     * Finances the shard in a single transaction, keeping the lease row locked so that the lease
+     * cannot be reclaimed by other workers in the meantime.
+     */
+    private int financeShard(String workerId, int shardId, FinancingRunContext runContext) {
+        return transactionTemplate.execute(status -> {
+            Optional<FinancingLease> lease = financingLeaseRepository.findByShardIdAndOwnerId(shardId, workerId);
+            if (lease.isEmpty()) {
+                log.warn("Worker {} lost lease of shard {}", workerId, shardId);
+                return 0;
+            }
+
+            List<Long> creditorsId = creditorRepository.findIdsByShard(shardId, shardingProperties.shardCount());
+            List<Invoice> unfinancedInvoices = creditorsId.isEmpty()
+                    ? List.of()
+                    : invoiceRepository.findUnfinancedByCreditorsId(creditorsId);
+            log.info("Worker {} financing {} invoices of shard {}", workerId, unfinancedInvoices.size(), shardId);
+            int financedInvoices = financingService.finance(runContext, unfinancedInvoices);
+
+            lease.get().setOwnerId(null);
+            lease.get().setLeaseExpiresAt(null);
+            lease.get().setCompletedAt(clock.instant());
+            return financedInvoices;
+        });
+    }
+
+    private void createMissingLeases() {
+        Set<Integer> existingShards = financingLeaseRepository.findAll().stream()
+                .map(FinancingLease::getShardId)
+                .collect(Collectors.toSet());
+
+        IntStream.range(0, shardingProperties.shardCount())
+                .filter(shardId -> !existingShards.contains(shardId))
+                .forEach(shardId -> {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> financingLeaseRepository.insertLease(shardId));
+                    } catch (DataIntegrityViolationException e) {
+                        log.debug("Lease of shard {} already created by another worker", shardId);
+                    }
+                });
+    }
+
+    public record ShardedFinancingResult(int financedShards, int financedInvoices) {
+    }
+}
@@ -0,0 +1,77 @@
+package lu.crx.financing.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FinancingRunMetricsTest {
+
+    @Test
+    void testReportPerPhaseAndChunk() {
+        // given
+        FinancingRunMetrics metrics = new FinancingRunMetrics();
+
+        // when
+        try (FinancingRunMetrics.Measurement measurement = metrics.measure(FinancingPhase.LOAD_INVOICES)) {
+            // nothing loaded
+        }
+        List<Object> allocated = new ArrayList<>();
+        for (int chunk = 0; chunk < 3; chunk++) {
+            try (FinancingRunMetrics.Measurement measurement = metrics.measure(FinancingPhase.WRITE)) {
+                for (int i = 0; i < 1_000; i++) {
+                    allocated.add(new long[16]);
+                }
+            }
+        }
+        metrics.recordInvoiceCompute(1_000_000L);
+        metrics.recordInvoiceCompute(2_000_000L);
+        metrics.addInvoices(10, 7);
+        FinancingRunReport report = metrics.report();
+
+        // then
+        Map<FinancingPhase, FinancingRunReport.PhaseReport> phases = report.phases().stream()
+                .collect(Collectors.toMap(FinancingRunReport.PhaseReport::phase, Function.identity()));
+        assertEquals(FinancingPhase.values().length, phases.size());
+        assertEquals(1, phases.get(FinancingPhase.LOAD_INVOICES).latency().count());
+        assertEquals(3, phases.get(FinancingPhase.WRITE).latency().count());
+        assertEquals(0, phases.get(FinancingPhase.COMPUTE).latency().count());
+        if (report.allocationMeasured()) {
+            assertTrue(phases.get(FinancingPhase.WRITE).allocatedBytes() >= 1_000L * 16 * Long.BYTES * 3);
+        }
+        assertEquals(2, report.invoiceComputeLatency().count());
+        assertEquals(2.0, report.invoiceComputeLatency().maxMs());
+        assertEquals(10, report.invoices());
+        assertEquals(7, report.financedInvoices());
+        assertEquals(3_000, allocated.size());
+    }
+
+    @Test
+    void testInvoiceComputeSampling() {
+        // given
+        FinancingRunMetrics sampledMetrics = new FinancingRunMetrics(4);
+        FinancingRunMetrics disabledMetrics = new FinancingRunMetrics(0);
+
+        // when
+        int sampled = 0;
+        int disabled = 0;
+        for (int i = 0; i < 10; i++) {
+            if (sampledMetrics.sampleInvoiceCompute()) {
+                sampled++;
+            }
+            if (disabledMetrics.sampleInvoiceCompute()) {
+                disabled++;
+            }
+        }
+
+        // then
+        assertEquals(3, sampled);
+        assertEquals(0, disabled);
+    }
+}
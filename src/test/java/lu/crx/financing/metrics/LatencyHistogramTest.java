@@ -0,0 +1,72 @@
+package lu.crx.financing.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketBoundaries() {
+        assertEquals(63, LatencyHistogram.bucketIndex(63));
+        assertEquals(64, LatencyHistogram.bucketIndex(64));
+        assertEquals(64, LatencyHistogram.bucketIndex(65));
+        assertEquals(95, LatencyHistogram.bucketIndex(127));
+        assertEquals(96, LatencyHistogram.bucketIndex(128));
+        assertEquals(65, LatencyHistogram.highestValueInBucket(64));
+        assertEquals(131, LatencyHistogram.highestValueInBucket(96));
+        assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) > 0);
+    }
+
+    @Test
+    void testPercentiles() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when
+        for (long i = 1; i <= 1_000; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        // then
+        assertEquals(1_000, histogram.count());
+        assertEquals(1_000_000_000L, histogram.maxNanos());
+        assertEquals(500_500_000L, histogram.meanNanos());
+        assertWithinPrecision(500_000_000L, histogram.valueAtPercentileNanos(50));
+        assertWithinPrecision(990_000_000L, histogram.valueAtPercentileNanos(99));
+        assertEquals(1_000_000_000L, histogram.valueAtPercentileNanos(100));
+    }
+
+    @Test
+    void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.valueAtPercentileNanos(99));
+        assertEquals(0, histogram.meanNanos());
+    }
+
+    @Test
+    void testSingleThreadHistogramMatchesLatencyHistogram() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+        SingleThreadLatencyHistogram singleThreadHistogram = new SingleThreadLatencyHistogram();
+        LatencyHistogram.LatencySummary emptySummary = singleThreadHistogram.summary();
+
+        // when
+        for (long i = 1; i <= 1_000; i++) {
+            histogram.record(i * 1_000_000L);
+            singleThreadHistogram.record(i * 1_000_000L);
+        }
+
+        // then
+        assertEquals(0, emptySummary.count());
+        assertEquals(0.0, emptySummary.p99Ms());
+        assertEquals(histogram.summary(), singleThreadHistogram.summary());
+    }
+
+    private void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.032, "expected ~" + expected + " but was " + actual);
+    }
+}
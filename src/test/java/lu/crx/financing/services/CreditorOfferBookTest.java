@@ -0,0 +1,67 @@
+package lu.crx.financing.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CreditorOfferBookTest {
+
+    private static final CreditorOfferBook.Offer EXPENSIVE = new CreditorOfferBook.Offer(1L, 11L, 50, 20);
+    private static final CreditorOfferBook.Offer CHEAP_LONG_TERM = new CreditorOfferBook.Offer(2L, 12L, 30, 60);
+    private static final CreditorOfferBook.Offer MEDIUM = new CreditorOfferBook.Offer(3L, 13L, 40, 20);
+
+    private final CreditorOfferBook book = CreditorOfferBook.of(1L, 3, List.of(EXPENSIVE, CHEAP_LONG_TERM, MEDIUM), 0L);
+
+    @Test
+    void testOffersSortedByAnnualRate() {
+        assertEquals(List.of(CHEAP_LONG_TERM, MEDIUM, EXPENSIVE), book.offers());
+    }
+
+    @Test
+    void testOffersCannotBeModified() {
+        assertThrows(UnsupportedOperationException.class, () -> book.offers().set(0, EXPENSIVE));
+        assertEquals(MEDIUM, book.selectBestOffer(30));
+        assertEquals(CreditorOfferBook.of(1L, 3, List.of(MEDIUM, EXPENSIVE, CHEAP_LONG_TERM), 0L), book);
+    }
+
+    @Test
+    void testSelectsCheapestOfferMeetingMinimumTerm() {
+        // the cheapest offer requires a longer term, the example from README.md: 40 bps * 30 days / 360 = 3 bps
+        assertEquals(MEDIUM, book.selectBestOffer(30));
+        assertEquals(3, MEDIUM.financingRateInBps(30));
+    }
+
+    @Test
+    void testNoOfferWhenCheapestEligibleExceedsMaxRate() {
+        // 40 bps * 45 days / 360 = 5 bps > 3 bps, more expensive offers can't be eligible either
+        assertNull(book.selectBestOffer(45));
+    }
+
+    @Test
+    void testNoOfferWhenTermTooShort() {
+        assertNull(book.selectBestOffer(19));
+    }
+
+    @Test
+    void testOfferEligibleWhenTermEqualsMinimumTerm() {
+        // 40 bps * 20 days / 360 = 2 bps, the term equal to the minimum term of the purchaser is enough
+        assertEquals(MEDIUM, book.selectBestOffer(20));
+    }
+
+    @Test
+    void testIncrementalUpdates() {
+        CreditorOfferBook updatedBook = book
+                .withMaxFinancingRate(10)
+                .withMinimumFinancingTerm(12L, 10)
+                .withAnnualRate(1L, 10);
+
+        assertEquals(1L, updatedBook.selectBestOffer(30).settingsId());
+        assertEquals(2L, updatedBook.withoutSettings(1L).selectBestOffer(30).settingsId());
+        assertEquals(3L, updatedBook.withoutSettings(1L).withoutPurchaser(12L).selectBestOffer(30).settingsId());
+        assertEquals(MEDIUM, book.selectBestOffer(30));
+    }
+}
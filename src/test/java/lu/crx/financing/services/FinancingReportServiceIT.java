@@ -0,0 +1,276 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.entities.*;
+import lu.crx.financing.repository.DailyVolumeView;
+import lu.crx.financing.repository.FinancingRollupRepository;
+import lu.crx.financing.repository.TermBucketRateView;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:reportdb;DB_CLOSE_DELAY=-1"
+})
+class FinancingReportServiceIT {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingReportService financingReportService;
+
+    @Autowired
+    private FinancingRollupRepository financingRollupRepository;
+
+    @Test
+    void testReportsFromRollups() {
+        // given
+        LocalDate today = LocalDate.now();
+
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(10)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        // financing rate in bps is a tenth of the financing term in days
+        Purchaser purchaser = Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(10)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(36)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(purchaser);
+            entityManager.persist(invoice(creditor, debtor, today.plusDays(20)));
+            entityManager.persist(invoice(creditor, debtor, today.plusDays(20)));
+            entityManager.persist(invoice(creditor, debtor, today.plusDays(45)));
+        });
+
+        // when
+        financingService.finance();
+
+        // then
+        List<DailyVolumeView> dailyVolumes = financingReportService.dailyVolumes(today, today);
+        assertEquals(1, dailyVolumes.size());
+        DailyVolumeView dailyVolume = dailyVolumes.get(0);
+        assertEquals(today, dailyVolume.getFinancingDate());
+        assertEquals(purchaser.getId(), dailyVolume.getPurchaserId());
+        assertEquals(creditor.getId(), dailyVolume.getCreditorId());
+        assertEquals(3, dailyVolume.getInvoiceCount());
+        assertEquals(3_000_00, dailyVolume.getValueInCents());
+        assertEquals(80, dailyVolume.getDiscountedAmountInCents());
+        assertEquals(2_999_20, dailyVolume.getEarlyPaymentAmountInCents());
+
+        List<TermBucketRateView> averageRates = financingReportService.averageRatesByTermBucket(today, today);
+        assertEquals(2, averageRates.size());
+        assertEquals(0, averageRates.get(0).getTermBucketInDays());
+        assertEquals(2, averageRates.get(0).getInvoiceCount());
+        assertEquals(2.0, averageRates.get(0).getAverageFinancingRateInBps());
+        assertEquals(30, averageRates.get(1).getTermBucketInDays());
+        assertEquals(1, averageRates.get(1).getInvoiceCount());
+        assertEquals(4.0, averageRates.get(1).getAverageFinancingRateInBps());
+
+        List<FinancingRateRollup> rateHistogram = financingReportService.rateHistogram(today, purchaser.getId(), creditor.getId());
+        assertEquals(2, rateHistogram.size());
+        assertEquals(2, rateHistogram.get(0).getKey().getFinancingRateInBps());
+        assertEquals(2, rateHistogram.get(0).getInvoiceCount());
+        assertEquals(4, rateHistogram.get(1).getKey().getFinancingRateInBps());
+        assertEquals(1, rateHistogram.get(1).getInvoiceCount());
+
+        // when another run finances a new invoice on the same day
+        template.executeWithoutResult(status -> entityManager.persist(invoice(creditor, debtor, today.plusDays(25))));
+        financingService.finance();
+
+        // then the rollups are incremented
+        dailyVolume = financingReportService.dailyVolumes(today, today).get(0);
+        assertEquals(4, dailyVolume.getInvoiceCount());
+        assertEquals(4_000_00, dailyVolume.getValueInCents());
+        assertEquals(100, dailyVolume.getDiscountedAmountInCents());
+
+        averageRates = financingReportService.averageRatesByTermBucket(today, today);
+        assertEquals(3, averageRates.get(0).getInvoiceCount());
+        assertEquals(2.0, averageRates.get(0).getAverageFinancingRateInBps());
+
+        rateHistogram = financingReportService.rateHistogram(today, purchaser.getId(), creditor.getId());
+        assertEquals(3, rateHistogram.get(0).getInvoiceCount());
+
+        assertEquals(List.of(), financingReportService.dailyVolumes(today.plusDays(1), today.plusDays(7)));
+    }
+
+    /**
+     * Two transactions create the same rollup concurrently, the one committing later merges into the created rollup.
+     */
+    @Test
+    void testConcurrentCreationOfRollup() throws Exception {
+        // given
+        LocalDate financingDate = LocalDate.of(2020, 1, 1);
+        FinancingRollupKey key = new FinancingRollupKey(financingDate, 1L, 1L, 30);
+        CountDownLatch merged = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+
+        // when
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> template.executeWithoutResult(status -> {
+            financingRollupRepository.incrementRollups(List.of(rollup(key, 1, 100)));
+            merged.countDown();
+            try {
+                commit.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(merged.await(1, TimeUnit.MINUTES));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> template.executeWithoutResult(status ->
+                financingRollupRepository.incrementRollups(List.of(rollup(key, 2, 200)))));
+        Thread.sleep(100);
+        commit.countDown();
+        first.get(1, TimeUnit.MINUTES);
+        second.get(1, TimeUnit.MINUTES);
+
+        // then
+        FinancingRollup rollup = financingRollupRepository.findById(key).orElseThrow();
+        assertEquals(3, rollup.getInvoiceCount());
+        assertEquals(300, rollup.getValueInCents());
+    }
+
+    /**
+     * Agreements financed before the rollups were introduced are reported after the rollups of their dates are rebuilt.
+     */
+    @Test
+    void testRebuildRollupsOfAgreementsFinancedBeforeRollups() {
+        // given
+        LocalDate financingDate = LocalDate.of(2021, 3, 1);
+
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(10)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(10)
+                .build();
+
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(purchaser);
+            List.of(financingAgreement(creditor, debtor, purchaser, financingDate, 20, 2),
+                    financingAgreement(creditor, debtor, purchaser, financingDate, 20, 2),
+                    financingAgreement(creditor, debtor, purchaser, financingDate, 45, 4)
+            ).forEach(financingAgreement -> {
+                entityManager.persist(financingAgreement.getInvoice());
+                entityManager.persist(financingAgreement);
+            });
+        });
+
+        // when
+        financingReportService.rebuildRollups(financingDate, financingDate);
+        financingReportService.rebuildRollups(financingDate, financingDate);
+
+        // then
+        List<DailyVolumeView> dailyVolumes = financingReportService.dailyVolumes(financingDate, financingDate);
+        assertEquals(1, dailyVolumes.size());
+        assertEquals(3, dailyVolumes.get(0).getInvoiceCount());
+        assertEquals(3_000_00, dailyVolumes.get(0).getValueInCents());
+        assertEquals(80, dailyVolumes.get(0).getDiscountedAmountInCents());
+        assertEquals(2_999_20, dailyVolumes.get(0).getEarlyPaymentAmountInCents());
+
+        List<TermBucketRateView> averageRates = financingReportService.averageRatesByTermBucket(financingDate, financingDate);
+        assertEquals(2, averageRates.size());
+        assertEquals(0, averageRates.get(0).getTermBucketInDays());
+        assertEquals(2, averageRates.get(0).getInvoiceCount());
+        assertEquals(2.0, averageRates.get(0).getAverageFinancingRateInBps());
+        assertEquals(30, averageRates.get(1).getTermBucketInDays());
+        assertEquals(4.0, averageRates.get(1).getAverageFinancingRateInBps());
+
+        List<FinancingRateRollup> rateHistogram = financingReportService.rateHistogram(financingDate, purchaser.getId(), creditor.getId());
+        assertEquals(2, rateHistogram.size());
+        assertEquals(2, rateHistogram.get(0).getInvoiceCount());
+        assertEquals(1, rateHistogram.get(1).getInvoiceCount());
+    }
+
+    @Test
+    void testInvalidReportRange() {
+        // given
+        LocalDate today = LocalDate.now();
+
+        // when then
+        assertThrows(IllegalArgumentException.class,
+                () -> financingReportService.dailyVolumes(today, today.minusDays(1)));
+    }
+
+    private static FinancingRollup rollup(FinancingRollupKey key, long invoiceCount, long valueInCents) {
+        return FinancingRollup.builder()
+                .key(key)
+                .invoiceCount(invoiceCount)
+                .valueInCents(valueInCents)
+                .earlyPaymentAmountInCents(valueInCents)
+                .build();
+    }
+
+    private static FinancingAgreement financingAgreement(Creditor creditor, Debtor debtor, Purchaser purchaser,
+                                                         LocalDate financingDate, long financingTermInDays,
+                                                         long financingRateInBps) {
+        long discountedAmountInCents = 1_000_00L * financingRateInBps / 10_000;
+        Invoice invoice = Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(1_000_00L)
+                .maturityDate(financingDate.plusDays(financingTermInDays))
+                .financed(true)
+                .discountedAmountInCents(discountedAmountInCents)
+                .earlyPaymentAmountInCents(1_000_00L - discountedAmountInCents)
+                .build();
+        return FinancingAgreement.builder()
+                .invoice(invoice)
+                .purchaser(purchaser)
+                .financingDate(financingDate)
+                .financingTermInDays(financingTermInDays)
+                .financingRateInBps(financingRateInBps)
+                .build();
+    }
+
+    private static Invoice invoice(Creditor creditor, Debtor debtor, LocalDate maturityDate) {
+        return Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(1_000_00L)
+                .maturityDate(maturityDate)
+                .build();
+    }
+}
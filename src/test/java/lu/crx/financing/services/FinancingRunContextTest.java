@@ -0,0 +1,47 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.entities.Invoice;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FinancingRunContextTest {
+
+    @Test
+    void testFinancingDatePinnedFromClock() {
+        // given
+        Clock clock = Clock.fixed(Instant.parse("2023-05-27T23:59:59Z"), ZoneOffset.UTC);
+
+        // when
+        FinancingRunContext runContext = FinancingRunContext.of(clock);
+
+        // then
+        assertEquals(LocalDate.of(2023, 5, 27), runContext.financingDate());
+        assertEquals(LocalDate.of(2023, 5, 27).toEpochDay(), runContext.financingEpochDay());
+    }
+
+    @Test
+    void testFinancingTermsInDays() {
+        // given
+        Clock clock = Clock.fixed(Instant.parse("2023-05-27T10:00:00Z"), ZoneOffset.UTC);
+        FinancingRunContext runContext = FinancingRunContext.of(clock);
+        List<Invoice> invoices = List.of(
+                Invoice.builder().maturityDate(LocalDate.of(2023, 6, 26)).build(),
+                Invoice.builder().maturityDate(LocalDate.of(2024, 5, 27)).build(),
+                Invoice.builder().maturityDate(LocalDate.of(2023, 5, 27)).build(),
+                Invoice.builder().maturityDate(LocalDate.of(2023, 5, 20)).build());
+
+        // when
+        long[] terms = runContext.financingTermsInDays(invoices);
+
+        // then
+        assertArrayEquals(new long[]{30, 366, 0, -7}, terms);
+    }
+}
@@ -1,25 +1,53 @@
 package lu.crx.financing.services;
 
 import lu.crx.financing.entities.*;
+import lu.crx.financing.metrics.FinancingPhase;
+import lu.crx.financing.metrics.FinancingRunReport;
+import lu.crx.financing.repository.InvoiceBatchRepository;
+import lu.crx.financing.repository.InvoiceRepository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 @AutoConfigureTestEntityManager
-@TestPropertySource(locations = "classpath:application-test.properties")
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "financing.backlog.chunk-size=" + FinancingServiceIT.CHUNK_SIZE
+})
 class FinancingServiceIT {
 
+    static final int CHUNK_SIZE = 2;
+
+    private static final LocalDate TODAY = LocalDate.of(2023, 5, 27);
+
+    @TestConfiguration
+    static class FixedClockConfiguration {
+
+        @Bean
+        @Primary
+        Clock fixedClock() {
+            return Clock.fixed(TODAY.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        }
+    }
+
     @Autowired
     private TestEntityManager entityManager;
 
@@ -29,6 +57,12 @@ class FinancingServiceIT {
     @Autowired
     private FinancingService financingService;
 
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private Clock clock;
+
     /**
      * The test case based on example from README.md
      */
@@ -65,7 +99,7 @@ class FinancingServiceIT {
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(10_000_00L)
-                .maturityDate(LocalDate.now().plusDays(30))
+                .maturityDate(LocalDate.of(2023, 6, 26))
                 .build();
 
         template.executeWithoutResult(transactionStatus -> {
@@ -84,6 +118,14 @@ class FinancingServiceIT {
             assertEquals(9_997_00, updatedInvoice.getEarlyPaymentAmountInCents());
             assertEquals(300, updatedInvoice.getDiscountedAmountInCents());
             assertEquals(10_000_00, updatedInvoice.getEarlyPaymentAmountInCents() + updatedInvoice.getDiscountedAmountInCents());
+
+            FinancingAgreement financingAgreement = entityManager.getEntityManager()
+                    .createQuery("SELECT fa FROM FinancingAgreement fa WHERE fa.invoice.id = :invoiceId", FinancingAgreement.class)
+                    .setParameter("invoiceId", invoice.getId())
+                    .getSingleResult();
+            assertEquals(LocalDate.of(2023, 5, 27), financingAgreement.getFinancingDate());
+            assertEquals(30, financingAgreement.getFinancingTermInDays());
+            assertEquals(3, financingAgreement.getFinancingRateInBps());
         });
     }
 
@@ -112,7 +154,7 @@ class FinancingServiceIT {
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(10_000_00L)
-                .maturityDate(LocalDate.now().plusDays(30))
+                .maturityDate(TODAY.plusDays(30))
                 .build();
 
         template.executeWithoutResult(status -> {
@@ -168,7 +210,7 @@ class FinancingServiceIT {
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(20_000_00L)
-                .maturityDate(LocalDate.now().plusDays(20))
+                .maturityDate(TODAY.plusDays(20))
                 .build();
 
         template.executeWithoutResult(status -> {
@@ -222,7 +264,7 @@ class FinancingServiceIT {
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(15_000_00L)
-                .maturityDate(LocalDate.now().plusDays(10))
+                .maturityDate(TODAY.plusDays(10))
                 .build();
 
         template.executeWithoutResult(status -> {
@@ -269,21 +311,21 @@ class FinancingServiceIT {
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(10_000_00L)
-                .maturityDate(LocalDate.now().plusDays(20))
+                .maturityDate(TODAY.plusDays(20))
                 .build();
 
         Invoice invoice2 = Invoice.builder()
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(20_000_00L)
-                .maturityDate(LocalDate.now().plusDays(30))
+                .maturityDate(TODAY.plusDays(30))
                 .build();
 
         Invoice invoice3 = Invoice.builder()
                 .creditor(creditor)
                 .debtor(debtor)
                 .valueInCents(30_000_00L)
-                .maturityDate(LocalDate.now().plusDays(5))
+                .maturityDate(TODAY.plusDays(5))
                 .build();
 
         template.executeWithoutResult(status -> {
@@ -302,8 +344,8 @@ class FinancingServiceIT {
             Invoice updatedInvoice1 = entityManager.find(Invoice.class, invoice1.getId());
             Invoice updatedInvoice2 = entityManager.find(Invoice.class, invoice2.getId());
             Invoice updatedInvoice3 = entityManager.find(Invoice.class, invoice3.getId());
-            FinancingAgreement financingAgreement1 = entityManager.find(FinancingAgreement.class, 1L);
-            FinancingAgreement financingAgreement2 = entityManager.find(FinancingAgreement.class, 2L);
+            FinancingAgreement financingAgreement1 = findFinancingAgreement(invoice1.getId());
+            FinancingAgreement financingAgreement2 = findFinancingAgreement(invoice2.getId());
 
             long expectedDiscount1 = BigDecimal.valueOf(10_000_00L)
                     .multiply(BigDecimal.valueOf(40*20/360))
@@ -313,7 +355,7 @@ class FinancingServiceIT {
             assertEquals(expectedEarlyPayment1, updatedInvoice1.getEarlyPaymentAmountInCents());
             assertEquals(expectedDiscount1, updatedInvoice1.getDiscountedAmountInCents());
             assertEquals(updatedInvoice1, financingAgreement1.getInvoice());
-            assertEquals(1L, financingAgreement1.getPurchaser().getId());
+            assertEquals(purchaser.getId(), financingAgreement1.getPurchaser().getId());
             assertEquals(true, updatedInvoice1.isFinanced());
 
             long expectedDiscount2 = BigDecimal.valueOf(20_000_00L)
@@ -325,7 +367,7 @@ class FinancingServiceIT {
             assertEquals(expectedDiscount2, updatedInvoice2.getDiscountedAmountInCents());
             assertEquals(true, updatedInvoice2.isFinanced());
             assertEquals(updatedInvoice2, financingAgreement2.getInvoice());
-            assertEquals(1L, financingAgreement2.getPurchaser().getId());
+            assertEquals(purchaser.getId(), financingAgreement2.getPurchaser().getId());
 
             assertEquals(null, updatedInvoice3.getEarlyPaymentAmountInCents());
             assertEquals(null, updatedInvoice3.getDiscountedAmountInCents());
@@ -333,4 +375,177 @@ class FinancingServiceIT {
         });
     }
 
+    @Test
+    void testFinancingAfterSettingsChange() {
+        // given
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        Purchaser purchaser1 = Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(50)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        Purchaser purchaser2 = Purchaser.builder()
+                .name("Purchaser2")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(40)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        Invoice invoice1 = Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(10_000_00L)
+                .maturityDate(TODAY.plusDays(30))
+                .build();
+
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(invoice1);
+            entityManager.persist(purchaser1);
+            entityManager.persist(purchaser2);
+        });
+        financingService.finance();
+
+        // when
+        Invoice invoice2 = Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(10_000_00L)
+                .maturityDate(TODAY.plusDays(30))
+                .build();
+
+        template.executeWithoutResult(status -> {
+            entityManager.find(Purchaser.class, purchaser2.getId()).setMinimumFinancingTermInDays(40);
+            entityManager.find(Creditor.class, creditor.getId()).setMaxFinancingRateInBps(5);
+            entityManager.persist(invoice2);
+        });
+        financingService.finance();
+
+        // then
+        template.executeWithoutResult(status -> {
+            FinancingAgreement financingAgreement1 = findFinancingAgreement(invoice1.getId());
+            assertEquals(purchaser2.getId(), financingAgreement1.getPurchaser().getId());
+
+            FinancingAgreement financingAgreement2 = findFinancingAgreement(invoice2.getId());
+            assertEquals(purchaser1.getId(), financingAgreement2.getPurchaser().getId());
+            assertEquals(4, financingAgreement2.getFinancingRateInBps());
+        });
+    }
+
+    @Test
+    void testFinancingMeasuredPerChunk() {
+        // given
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(40)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < CHUNK_SIZE * 2 + 1; i++) {
+            invoices.add(Invoice.builder()
+                    .creditor(creditor)
+                    .debtor(debtor)
+                    .valueInCents(10_000_00L)
+                    .maturityDate(TODAY.plusDays(30))
+                    .build());
+        }
+
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(purchaser);
+            invoices.forEach(entityManager::persist);
+        });
+        FinancingRunContext runContext = FinancingRunContext.of(clock);
+
+        // when
+        int financedInvoices = template.execute(status -> financingService.finance(runContext,
+                invoices.stream().map(invoice -> entityManager.find(Invoice.class, invoice.getId())).toList()));
+
+        // then
+        assertEquals(invoices.size(), financedInvoices);
+        FinancingRunReport report = runContext.metrics().report();
+        for (FinancingRunReport.PhaseReport phase : report.phases()) {
+            if (phase.phase() == FinancingPhase.COMPUTE || phase.phase() == FinancingPhase.WRITE) {
+                assertEquals(3, phase.latency().count());
+            }
+        }
+    }
+
+    /**
+     * The batch update is executed in the order of invoice ids, the results still follow the order of the given invoices.
+     */
+    @Test
+    void testBatchUpdateResultsFollowGivenOrder() {
+        // given
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            invoices.add(Invoice.builder()
+                    .creditor(creditor)
+                    .debtor(debtor)
+                    .valueInCents(10_000_00L)
+                    .maturityDate(TODAY.plusDays(30))
+                    .financed(i == 0)
+                    .build());
+        }
+
+        template.executeWithoutResult(transactionStatus -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            invoices.forEach(entityManager::persist);
+        });
+
+        // when
+        boolean[] updated = template.execute(transactionStatus -> invoiceRepository.updateFinancedInvoices(List.of(
+                new InvoiceBatchRepository.FinancedInvoice(invoices.get(2).getId(), 9_997_00, 300),
+                new InvoiceBatchRepository.FinancedInvoice(invoices.get(0).getId(), 9_997_00, 300),
+                new InvoiceBatchRepository.FinancedInvoice(invoices.get(1).getId(), 9_997_00, 300))));
+
+        // then
+        assertArrayEquals(new boolean[]{true, false, true}, updated);
+    }
+
+    private FinancingAgreement findFinancingAgreement(long invoiceId) {
+        return entityManager.getEntityManager()
+                .createQuery("SELECT fa FROM FinancingAgreement fa WHERE fa.invoice.id = :invoiceId", FinancingAgreement.class)
+                .setParameter("invoiceId", invoiceId)
+                .getSingleResult();
+    }
 }
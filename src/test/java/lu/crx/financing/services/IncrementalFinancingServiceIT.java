@@ -0,0 +1,176 @@
+package lu.crx.financing.services;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.*;
+import lu.crx.financing.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@Slf4j
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "financing.incremental.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:incrementaldb;DB_CLOSE_DELAY=-1"
+})
+class IncrementalFinancingServiceIT {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Generous bound of the p99 latency, far below the interval of a sweep, even on a loaded build machine.
+     */
+    private static final double MAX_P99_LATENCY_MILLIS = 3_000;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private IncrementalFinancingService incrementalFinancingService;
+
+    /**
+     * Load test: invoices are created one per transaction by concurrent clients at a steady rate
+     * and financed without any sweep.
+     */
+    @Test
+    void testInvoicesFinancedOnCreation() throws Exception {
+        // given
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(40)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(purchaser);
+        });
+        long histogramCountBefore = incrementalFinancingService.latencyHistogram().count();
+
+        // when
+        int clients = 2;
+        int invoicesPerClient = 250;
+        long pauseBetweenInvoicesMillis = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<List<Long>>> createdInvoices = IntStream.range(0, clients)
+                .mapToObj(client -> executor.submit(() -> IntStream.range(0, invoicesPerClient)
+                        .mapToObj(i -> {
+                            pause(pauseBetweenInvoicesMillis);
+                            return template.execute(status -> {
+                                Invoice invoice = Invoice.builder()
+                                        .creditor(entityManager.find(Creditor.class, creditor.getId()))
+                                        .debtor(entityManager.find(Debtor.class, debtor.getId()))
+                                        .valueInCents(10_000_00L)
+                                        .maturityDate(LocalDate.now().plusDays(30))
+                                        .build();
+                                entityManager.persist(invoice);
+                                return invoice.getId();
+                            });
+                        })
+                        .toList()))
+                .toList();
+        List<Long> invoiceIds = createdInvoices.stream()
+                .flatMap(future -> {
+                    try {
+                        return future.get(1, TimeUnit.MINUTES).stream();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+        executor.shutdown();
+
+        // then
+        awaitFinanced(invoiceIds);
+        // latencies are recorded right after the commit of the financing, so they may trail the financed invoices
+        LatencyHistogram latencyHistogram = incrementalFinancingService.latencyHistogram();
+        awaitLatencyCount(latencyHistogram, histogramCountBefore + invoiceIds.size());
+        LatencyHistogram.LatencySummary latency = latencyHistogram.summary();
+        log.info("Invoice to financing latency: {}", latency);
+        assertEquals(histogramCountBefore + invoiceIds.size(), latencyHistogram.count());
+        assertTrue(latency.p99Ms() < MAX_P99_LATENCY_MILLIS, "p99 latency " + latency.p99Ms() + " ms");
+
+        financingService.finance();
+        template.executeWithoutResult(status -> {
+            Long agreements = entityManager.getEntityManager()
+                    .createQuery("SELECT COUNT(fa) FROM FinancingAgreement fa WHERE fa.invoice.id IN :invoiceIds", Long.class)
+                    .setParameter("invoiceIds", invoiceIds)
+                    .getSingleResult();
+            assertEquals(invoiceIds.size(), agreements);
+
+            Invoice invoice = entityManager.find(Invoice.class, invoiceIds.get(0));
+            assertEquals(9_997_00, invoice.getEarlyPaymentAmountInCents());
+            assertEquals(300, invoice.getDiscountedAmountInCents());
+        });
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitFinanced(List<Long> invoiceIds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long financed = 0;
+        while (System.currentTimeMillis() < deadline) {
+            financed = template.execute(status -> entityManager.getEntityManager()
+                    .createQuery("SELECT COUNT(i) FROM Invoice i WHERE i.financed = true AND i.id IN :invoiceIds", Long.class)
+                    .setParameter("invoiceIds", invoiceIds)
+                    .getSingleResult());
+            if (financed == invoiceIds.size()) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Only " + financed + " of " + invoiceIds.size() + " invoices financed in time");
+    }
+
+    private void awaitLatencyCount(LatencyHistogram latencyHistogram, long expectedCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (latencyHistogram.count() < expectedCount) {
+            if (System.currentTimeMillis() >= deadline) {
+                fail("Only " + latencyHistogram.count() + " of " + expectedCount + " latencies recorded in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.entities.*;
+import org.hibernate.Interceptor;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "financing.backlog.storage=MAPPED",
+        "financing.backlog.chunk-size=" + OffHeapFinancingServiceIT.CHUNK_SIZE,
+        "spring.datasource.url=jdbc:h2:mem:offheapdb;DB_CLOSE_DELAY=-1"
+})
+class OffHeapFinancingServiceIT {
+
+    static final int CHUNK_SIZE = 10;
+
+    /**
+     * Largest number of entities managed by a session at its flush.
+     */
+    private static final AtomicInteger MAX_FLUSHED_ENTITIES = new AtomicInteger();
+
+    @TestConfiguration
+    static class FlushedEntitiesConfiguration {
+
+        @Bean
+        HibernatePropertiesCustomizer flushedEntitiesInterceptor() {
+            return hibernateProperties -> hibernateProperties.put(AvailableSettings.INTERCEPTOR, new Interceptor() {
+                @Override
+                public void postFlush(Iterator<Object> entities) {
+                    int count = 0;
+                    while (entities.hasNext()) {
+                        entities.next();
+                        count++;
+                    }
+                    MAX_FLUSHED_ENTITIES.accumulateAndGet(count, Math::max);
+                }
+            });
+        }
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Test
+    void testFinancingFromMappedBacklog() {
+        // given
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor1")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor1")
+                .build();
+
+        Purchaser purchaser1 = Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(50)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        Purchaser purchaser2 = Purchaser.builder()
+                .name("Purchaser2")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(40)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        Invoice invoice = Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(10_000_00L)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+
+        Invoice tooShortInvoice = Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .valueInCents(10_000_00L)
+                .maturityDate(LocalDate.now().plusDays(10))
+                .build();
+
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(invoice);
+            entityManager.persist(tooShortInvoice);
+            entityManager.persist(purchaser1);
+            entityManager.persist(purchaser2);
+        });
+
+        // when
+        financingService.finance();
+
+        // then
+        template.executeWithoutResult(status -> {
+            Invoice updatedInvoice = entityManager.find(Invoice.class, invoice.getId());
+            assertEquals(9_997_00, updatedInvoice.getEarlyPaymentAmountInCents());
+            assertEquals(300, updatedInvoice.getDiscountedAmountInCents());
+            assertEquals(true, updatedInvoice.isFinanced());
+
+            FinancingAgreement financingAgreement = entityManager.getEntityManager()
+                    .createQuery("SELECT fa FROM FinancingAgreement fa WHERE fa.invoice.id = :invoiceId", FinancingAgreement.class)
+                    .setParameter("invoiceId", invoice.getId())
+                    .getSingleResult();
+            assertEquals(purchaser2.getId(), financingAgreement.getPurchaser().getId());
+
+            Invoice updatedTooShortInvoice = entityManager.find(Invoice.class, tooShortInvoice.getId());
+            assertEquals(null, updatedTooShortInvoice.getEarlyPaymentAmountInCents());
+            assertEquals(false, updatedTooShortInvoice.isFinanced());
+        });
+    }
+
+    @Test
+    void testPersistenceContextDoesNotGrowWithBacklog() {
+        // given
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor2")
+                .build();
+
+        Debtor debtor = Debtor.builder()
+                .name("Debtor2")
+                .build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .name("Purchaser3")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(40)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        int invoices = CHUNK_SIZE * 10 + 5;
+        template.executeWithoutResult(status -> {
+            entityManager.persist(creditor);
+            entityManager.persist(debtor);
+            entityManager.persist(purchaser);
+            for (int i = 0; i < invoices; i++) {
+                entityManager.persist(Invoice.builder()
+                        .creditor(creditor)
+                        .debtor(debtor)
+                        .valueInCents(10_000_00L)
+                        .maturityDate(LocalDate.now().plusDays(30))
+                        .build());
+            }
+        });
+        MAX_FLUSHED_ENTITIES.set(0);
+
+        // when
+        financingService.finance();
+
+        // then the agreements of every chunk are committed and released before the next chunk
+        assertTrue(MAX_FLUSHED_ENTITIES.get() > 0);
+        assertTrue(MAX_FLUSHED_ENTITIES.get() <= CHUNK_SIZE,
+                "Persistence context grew to " + MAX_FLUSHED_ENTITIES.get() + " entities");
+        template.executeWithoutResult(status -> assertEquals((long) invoices, entityManager.getEntityManager()
+                .createQuery("SELECT COUNT(fa) FROM FinancingAgreement fa WHERE fa.purchaser.id = :purchaserId")
+                .setParameter("purchaserId", purchaser.getId())
+                .getSingleResult()));
+    }
+}
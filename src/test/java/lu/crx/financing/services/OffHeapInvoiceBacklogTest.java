@@ -0,0 +1,76 @@
+package lu.crx.financing.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapInvoiceBacklogTest {
+
+    @TempDir
+    private Path scratchDir;
+
+    @Test
+    void testDirectBacklogSpanningMultipleSegments() {
+        try (OffHeapInvoiceBacklog backlog = new OffHeapInvoiceBacklog(4, null)) {
+            // when
+            fill(backlog, 10);
+
+            // then
+            assertRecords(backlog, 10);
+        }
+    }
+
+    @Test
+    void testMappedBacklogDeletesScratchFilesOnClose() throws IOException {
+        // given
+        OffHeapInvoiceBacklog backlog = new OffHeapInvoiceBacklog(4, scratchDir);
+
+        // when
+        fill(backlog, 10);
+
+        // then
+        assertRecords(backlog, 10);
+        try (Stream<Path> scratchFiles = Files.list(scratchDir)) {
+            assertEquals(3, scratchFiles.count());
+        }
+        backlog.close();
+        try (Stream<Path> scratchFiles = Files.list(scratchDir)) {
+            assertEquals(0, scratchFiles.count());
+        }
+    }
+
+    @Test
+    void testIndexOutOfBounds() {
+        try (OffHeapInvoiceBacklog backlog = new OffHeapInvoiceBacklog(4, null)) {
+            fill(backlog, 3);
+
+            assertThrows(IndexOutOfBoundsException.class, () -> backlog.invoiceId(3));
+            assertThrows(IndexOutOfBoundsException.class, () -> backlog.valueInCents(-1));
+        }
+    }
+
+    private void fill(OffHeapInvoiceBacklog backlog, int size) {
+        for (int i = 0; i < size; i++) {
+            backlog.add(1_000L + i, i % 2, 19_000L + i, 10_000_00L * i);
+        }
+    }
+
+    private void assertRecords(OffHeapInvoiceBacklog backlog, int size) {
+        assertEquals(size, backlog.size());
+        assertEquals(Set.of(0L, 1L), backlog.creditorIds());
+        for (int i = 0; i < size; i++) {
+            assertEquals(1_000L + i, backlog.invoiceId(i));
+            assertEquals(i % 2, backlog.creditorId(i));
+            assertEquals(19_000L + i, backlog.maturityEpochDay(i));
+            assertEquals(10_000_00L * i, backlog.valueInCents(i));
+        }
+    }
+}
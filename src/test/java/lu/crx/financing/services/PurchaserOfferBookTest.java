@@ -0,0 +1,113 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.configuration.OfferBookProperties;
+import lu.crx.financing.entities.FinancingSettingsChangedEvent;
+import lu.crx.financing.repository.PurchaserOfferView;
+import lu.crx.financing.repository.PurchaserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PurchaserOfferBookTest {
+
+    private static final long CREDITOR_ID = 1L;
+    private static final long SETTINGS_ID = 10L;
+
+    private final PurchaserRepository purchaserRepository = mock(PurchaserRepository.class);
+    private final PurchaserOfferBook purchaserOfferBook = new PurchaserOfferBook(purchaserRepository,
+            new OfferBookProperties(null));
+
+    @Test
+    void testBooksLoadedOnceAndUpdatedOnChange() {
+        // given
+        when(purchaserRepository.findOffersByCreditorsId(anySet())).thenReturn(List.of(offer()));
+        purchaserOfferBook.books(Set.of(CREDITOR_ID));
+
+        // when
+        purchaserOfferBook.financingSettingsChanged(
+                new FinancingSettingsChangedEvent.SettingsRemoved(SETTINGS_ID, CREDITOR_ID));
+        CreditorOfferBook book = purchaserOfferBook.books(Set.of(CREDITOR_ID)).get(CREDITOR_ID);
+
+        // then
+        assertNull(book.selectBestOffer(30));
+        verify(purchaserRepository, times(1)).findOffersByCreditorsId(anySet());
+    }
+
+    @Test
+    void testBooksNotCachedWhenChangeCommittedDuringLoad() {
+        // given the settings are removed after the offers were read, but before the books are cached
+        when(purchaserRepository.findOffersByCreditorsId(anySet())).thenAnswer(invocation -> {
+            purchaserOfferBook.financingSettingsChanged(
+                    new FinancingSettingsChangedEvent.SettingsRemoved(SETTINGS_ID, CREDITOR_ID));
+            return List.of(offer());
+        }).thenReturn(List.of());
+
+        // when
+        CreditorOfferBook loadedBook = purchaserOfferBook.books(Set.of(CREDITOR_ID)).get(CREDITOR_ID);
+        CreditorOfferBook reloadedBook = purchaserOfferBook.books(Set.of(CREDITOR_ID)).get(CREDITOR_ID);
+
+        // then the stale book is used by the loading run only and reloaded by the next one
+        assertEquals(SETTINGS_ID, loadedBook.selectBestOffer(30).settingsId());
+        assertNull(reloadedBook.selectBestOffer(30));
+        verify(purchaserRepository, times(2)).findOffersByCreditorsId(anySet());
+    }
+
+    @Test
+    void testBooksReloadedAfterMaxAge() {
+        // given
+        PurchaserOfferBook expiringOfferBook = new PurchaserOfferBook(purchaserRepository,
+                new OfferBookProperties(Duration.ZERO));
+        when(purchaserRepository.findOffersByCreditorsId(anySet())).thenReturn(List.of(offer()));
+
+        // when
+        expiringOfferBook.books(Set.of(CREDITOR_ID));
+        expiringOfferBook.books(Set.of(CREDITOR_ID));
+
+        // then
+        verify(purchaserRepository, times(2)).findOffersByCreditorsId(anySet());
+    }
+
+    private static PurchaserOfferView offer() {
+        return new PurchaserOfferView() {
+            @Override
+            public long getSettingsId() {
+                return SETTINGS_ID;
+            }
+
+            @Override
+            public long getPurchaserId() {
+                return 20L;
+            }
+
+            @Override
+            public long getCreditorId() {
+                return CREDITOR_ID;
+            }
+
+            @Override
+            public int getMinimumFinancingTermInDays() {
+                return 20;
+            }
+
+            @Override
+            public int getAnnualRateInBps() {
+                return 40;
+            }
+
+            @Override
+            public int getMaxFinancingRateInBps() {
+                return 3;
+            }
+        };
+    }
+}
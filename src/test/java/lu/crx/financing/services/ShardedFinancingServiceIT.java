@@ -0,0 +1,297 @@
+package lu.crx.financing.services;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.configuration.ShardingProperties;
+import lu.crx.financing.entities.*;
+import lu.crx.financing.repository.FinancingLeaseRepository;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties")
+class ShardedFinancingServiceIT {
+
+    private static final long SIMULATED_SHARD_QUERY_LATENCY_MILLIS = 100;
+
+    private static volatile boolean simulatedShardQueryLatency;
+
+    @TestConfiguration
+    static class SimulatedLatencyConfiguration {
+
+        /**
+         * Delays the query of the unfinanced invoices of a shard, while the simulated latency is on.
+         */
+        @Bean
+        HibernatePropertiesCustomizer simulatedShardQueryLatency() {
+            return hibernateProperties -> hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR,
+                    (StatementInspector) sql -> {
+                        if (simulatedShardQueryLatency && sql.contains("from invoice") && sql.contains("creditor_id in")) {
+                            try {
+                                Thread.sleep(SIMULATED_SHARD_QUERY_LATENCY_MILLIS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return sql;
+                    });
+        }
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private ShardedFinancingService shardedFinancingService;
+
+    @Autowired
+    private FinancingLeaseRepository financingLeaseRepository;
+
+    @Autowired
+    private ShardingProperties shardingProperties;
+
+    @Test
+    void testConcurrentWorkersFinanceEachInvoiceOnce() throws Exception {
+        // given
+        shardedFinancingService.finance("warm-up");
+        List<Invoice> invoices = createInvoices(shardingProperties.shardCount() * 2, 50);
+
+        // when
+        WorkersRun run = financeConcurrently(4);
+
+        // then
+        assertEquals(invoices.size(), run.financedInvoices());
+        // every shard is financed exactly once and the shards are spread over all workers
+        assertEquals(shardingProperties.shardCount(), run.financedShards());
+        run.results().forEach(result -> assertTrue(result.financedShards() > 0));
+        template.executeWithoutResult(status -> {
+            List<?> invoicesFinancedMoreThanOnce = entityManager.getEntityManager()
+                    .createQuery("SELECT fa.invoice.id FROM FinancingAgreement fa GROUP BY fa.invoice.id HAVING COUNT(fa) > 1")
+                    .getResultList();
+            assertTrue(invoicesFinancedMoreThanOnce.isEmpty());
+            invoices.forEach(invoice -> assertTrue(entityManager.find(Invoice.class, invoice.getId()).isFinanced()));
+        });
+    }
+
+    /**
+     * Every shard waits for a simulated round trip of a remote database when loading its invoices,
+     * the same backlog is then financed faster by more workers, even on a single CPU.
+     */
+    @Test
+    void testThroughputScalesWithWorkers() throws Exception {
+        // given
+        shardedFinancingService.finance("warm-up");
+        createInvoices(shardingProperties.shardCount(), 10);
+        financeConcurrently(1);
+        int workers = 4;
+
+        // when
+        long singleWorkerMillis;
+        long multipleWorkersMillis;
+        simulatedShardQueryLatency = true;
+        try {
+            createInvoices(shardingProperties.shardCount() * 2, 50);
+            singleWorkerMillis = financeConcurrently(1).elapsedMillis();
+            createInvoices(shardingProperties.shardCount() * 2, 50);
+            multipleWorkersMillis = financeConcurrently(workers).elapsedMillis();
+        } finally {
+            simulatedShardQueryLatency = false;
+        }
+
+        // then
+        log.info("1 worker financed the backlog in {} ms, {} workers in {} ms", singleWorkerMillis, workers, multipleWorkersMillis);
+        assertTrue(multipleWorkersMillis < singleWorkerMillis * 0.7,
+                workers + " workers took " + multipleWorkersMillis + " ms, 1 worker " + singleWorkerMillis + " ms");
+    }
+
+    /**
+     * A shard locked by a busy worker is skipped, so other workers keep financing without waiting for it.
+     */
+    @Test
+    void testWorkerSkipsShardLockedByAnotherWorker() throws Exception {
+        // given
+        shardedFinancingService.finance("warm-up");
+        List<Invoice> newInvoices = createInvoices(shardingProperties.shardCount(), 1);
+        Invoice lockedInvoice = newInvoices.get(0);
+        int lockedShard = (int) (lockedInvoice.getCreditor().getId() % shardingProperties.shardCount());
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> busyWorker = CompletableFuture.runAsync(() -> template.executeWithoutResult(status -> {
+            entityManager.getEntityManager()
+                    .createNativeQuery("SELECT shard_id FROM financing_lease WHERE shard_id = :shardId FOR UPDATE")
+                    .setParameter("shardId", lockedShard)
+                    .getResultList();
+            locked.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(locked.await(1, TimeUnit.MINUTES));
+
+        // when
+        int financedInvoices = shardedFinancingService.finance("worker").financedInvoices();
+        release.countDown();
+        busyWorker.get(1, TimeUnit.MINUTES);
+
+        // then
+        assertEquals(newInvoices.size() - 1, financedInvoices);
+        template.executeWithoutResult(status ->
+                assertFalse(entityManager.find(Invoice.class, lockedInvoice.getId()).isFinanced()));
+        assertEquals(1, shardedFinancingService.finance("worker").financedInvoices());
+    }
+
+    @Test
+    void testExpiredLeaseOfDeadWorkerIsReclaimed() {
+        // given
+        shardedFinancingService.finance("warm-up");
+        Invoice invoice = createInvoices(1, 1).get(0);
+        int shardId = (int) (invoice.getCreditor().getId() % shardingProperties.shardCount());
+        template.executeWithoutResult(status -> {
+            FinancingLease lease = financingLeaseRepository.findById(shardId).orElseThrow();
+            lease.setOwnerId("dead-worker");
+            lease.setLeaseExpiresAt(Instant.now().minusSeconds(1));
+        });
+
+        // when
+        int financedInvoices = shardedFinancingService.finance("worker").financedInvoices();
+
+        // then
+        assertEquals(1, financedInvoices);
+        template.executeWithoutResult(status -> {
+            assertTrue(entityManager.find(Invoice.class, invoice.getId()).isFinanced());
+            FinancingLease lease = financingLeaseRepository.findById(shardId).orElseThrow();
+            assertEquals(null, lease.getOwnerId());
+        });
+    }
+
+    @Test
+    void testActiveLeaseOfAnotherWorkerIsNotClaimed() {
+        // given
+        shardedFinancingService.finance("warm-up");
+        Invoice invoice = createInvoices(1, 1).get(0);
+        int shardId = (int) (invoice.getCreditor().getId() % shardingProperties.shardCount());
+        template.executeWithoutResult(status -> {
+            FinancingLease lease = financingLeaseRepository.findById(shardId).orElseThrow();
+            lease.setOwnerId("busy-worker");
+            lease.setLeaseExpiresAt(Instant.now().plusSeconds(600));
+        });
+
+        // when
+        int financedInvoices = shardedFinancingService.finance("worker").financedInvoices();
+
+        // then
+        assertEquals(0, financedInvoices);
+        template.executeWithoutResult(status -> {
+            assertFalse(entityManager.find(Invoice.class, invoice.getId()).isFinanced());
+            FinancingLease lease = financingLeaseRepository.findById(shardId).orElseThrow();
+            lease.setOwnerId(null);
+            lease.setLeaseExpiresAt(null);
+        });
+    }
+
+    private WorkersRun financeConcurrently(int workers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        List<Future<ShardedFinancingService.ShardedFinancingResult>> futures = IntStream.range(0, workers)
+                .mapToObj(i -> executor.submit(() -> shardedFinancingService.finance("worker-" + i)))
+                .toList();
+        List<ShardedFinancingService.ShardedFinancingResult> results = new ArrayList<>();
+        for (Future<ShardedFinancingService.ShardedFinancingResult> future : futures) {
+            results.add(future.get(1, TimeUnit.MINUTES));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        WorkersRun run = new WorkersRun(results, elapsedMillis);
+        log.info("{} workers financed {} invoices in {} ms, shards per worker: {}", workers, run.financedInvoices(),
+                elapsedMillis, results.stream().map(ShardedFinancingService.ShardedFinancingResult::financedShards).toList());
+        return run;
+    }
+
+    /**
+     * Creates creditors with one eligible purchaser each and the given number of invoices per creditor.
+     */
+    private List<Invoice> createInvoices(int creditors, int invoicesPerCreditor) {
+        List<Invoice> invoices = new ArrayList<>();
+        template.executeWithoutResult(status -> {
+            Debtor debtor = Debtor.builder()
+                    .name("Debtor")
+                    .build();
+            entityManager.persist(debtor);
+
+            for (int c = 0; c < creditors; c++) {
+                Creditor creditor = Creditor.builder()
+                        .maxFinancingRateInBps(60)
+                        .name("Creditor" + c)
+                        .build();
+                entityManager.persist(creditor);
+
+                Purchaser purchaser = Purchaser.builder()
+                        .name("Purchaser" + c)
+                        .minimumFinancingTermInDays(10)
+                        .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                                .annualRateInBps(40)
+                                .creditor(creditor)
+                                .build())
+                        .build();
+                entityManager.persist(purchaser);
+
+                for (int i = 0; i < invoicesPerCreditor; i++) {
+                    Invoice invoice = Invoice.builder()
+                            .creditor(creditor)
+                            .debtor(debtor)
+                            .valueInCents(10_000_00L)
+                            .maturityDate(LocalDate.now().plusDays(30))
+                            .build();
+                    entityManager.persist(invoice);
+                    invoices.add(invoice);
+                }
+            }
+        });
+        return invoices;
+    }
+
+    private record WorkersRun(List<ShardedFinancingService.ShardedFinancingResult> results, long elapsedMillis) {
+
+        int financedInvoices() {
+            return results.stream().mapToInt(ShardedFinancingService.ShardedFinancingResult::financedInvoices).sum();
+        }
+
+        int financedShards() {
+            return results.stream().mapToInt(ShardedFinancingService.ShardedFinancingResult::financedShards).sum();
+        }
+    }
+}